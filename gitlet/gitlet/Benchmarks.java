@@ -0,0 +1,315 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.stream.Stream;
+
+/** Timing benchmarks for Gitlet's internal data structures.  Usage:
+ *  java gitlet.Benchmarks [NAME ...], where each NAME is one of the
+ *  benchmarks below (all of them by default).  Each builds a synthetic
+ *  repository in a temporary directory and prints the time per operation.
+ *  @author Santosh Tatipamula
+ */
+public class Benchmarks {
+
+    /** Runs the benchmarks named in ARGS, or all of them. */
+    public static void main(String... args) throws IOException {
+        String[] names = args.length == 0 ? ALL : args;
+        for (String name : names) {
+            if (name.equals("merge-base")) {
+                mergebase();
+            } else if (name.equals("trees")) {
+                trees();
+            } else if (name.equals("add")) {
+                add();
+            } else if (name.equals("merge-lines")) {
+                mergelines();
+            } else if (name.equals("merge")) {
+                merge();
+            } else {
+                System.out.println("No benchmark named " + name + ".");
+            }
+        }
+    }
+
+    /** Times CommitGraph.mergebase on a 100k-commit history in which two
+     *  long branches, each repeatedly merging short side branches,
+     *  diverge from a common trunk. */
+    static void mergebase() throws IOException {
+        CommitGraph g = new CommitGraph(tempdir());
+        int trunk = CommitGraph.NONE;
+        for (int i = 0; i < TRUNK; i += 1) {
+            trunk = commit(g, trunk, CommitGraph.NONE);
+        }
+        int[] tips = new int[2];
+        int perbranch = (COMMITS - TRUNK) / tips.length;
+        for (int b = 0; b < tips.length; b += 1) {
+            int tip = trunk;
+            int made = 0;
+            while (made < perbranch) {
+                if (made % SIDE_EVERY == 0 && made > 0) {
+                    int side = tip;
+                    for (int j = 0; j < SIDE_LENGTH; j += 1) {
+                        side = commit(g, side, CommitGraph.NONE);
+                    }
+                    tip = commit(g, commit(g, tip, CommitGraph.NONE), side);
+                    made += SIDE_LENGTH + 2;
+                } else {
+                    tip = commit(g, tip, CommitGraph.NONE);
+                    made += 1;
+                }
+            }
+            tips[b] = tip;
+        }
+        int base = CommitGraph.NONE;
+        for (int i = 0; i < WARMUP; i += 1) {
+            base = g.mergebase(tips[0], tips[1]);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i += 1) {
+            base = g.mergebase(tips[0], tips[1]);
+        }
+        report("merge-base of divergent branches, " + g.size()
+               + " commits", System.nanoTime() - start, ROUNDS);
+        if (base != trunk) {
+            throw Utils.error("merge-base found the wrong commit.");
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i += 1) {
+            g.mergebase(tips[0], trunk + (tips[0] - trunk) / 2);
+        }
+        report("merge-base of a branch and its ancestor",
+               System.nanoTime() - start, ROUNDS);
+    }
+
+    /** Times the tree operations behind commit, checkout and merge on a
+     *  snapshot of 10k files in 100 directories: writing the whole
+     *  snapshot, updating it after a one-file change, flattening it, and
+     *  diffing the two versions. */
+    static void trees() throws IOException {
+        ObjectStore objects = new ObjectStore(tempdir());
+        HashMap<String, String> mapping = new HashMap<>();
+        for (int i = 0; i < FILES; i += 1) {
+            mapping.put("src/module" + (i / 100) + "/File" + i + ".java",
+                        Utils.sha1("contents " + i));
+        }
+        String root = Tree.write(objects, mapping);
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i += 1) {
+            Tree.write(objects, mapping);
+        }
+        report("Tree.write, " + FILES + " files", System.nanoTime() - start,
+               ROUNDS);
+        HashMap<String, String> change = new HashMap<>();
+        String updated = root;
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i += 1) {
+            change.put("src/module7/File700.java", Utils.sha1("edit " + i));
+            updated = Tree.update(objects, root, change);
+        }
+        report("Tree.update, one changed file", System.nanoTime() - start,
+               ROUNDS);
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i += 1) {
+            Tree.flatten(objects, updated);
+        }
+        report("Tree.flatten", System.nanoTime() - start, ROUNDS);
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i += 1) {
+            if (Tree.diff(objects, root, updated).size() != 1) {
+                throw Utils.error("Tree.diff found the wrong changes.");
+            }
+        }
+        report("Tree.diff, one changed file", System.nanoTime() - start,
+               ROUNDS);
+    }
+
+    /** Times staging 10k small files with Gitlet.hashfiles, the core of
+     *  a single "add" of many paths: first into an empty object store,
+     *  and then again with every file already known to the stat cache. */
+    static void add() throws IOException {
+        File dir = tempdir();
+        ArrayList<String> names = new ArrayList<>();
+        for (int i = 0; i < FILES; i += 1) {
+            File f = new File(dir, "dir" + (i / 100) + "/file" + i);
+            f.getParentFile().mkdirs();
+            Utils.writeContents(f, "small file " + i + "\n");
+            names.add(f.getPath());
+        }
+        HashMap<String, String> bases = new HashMap<>();
+        long cold = 0;
+        long warm = 0;
+        for (int r = 0; r < ADD_ROUNDS; r += 1) {
+            File meta = new File(dir, ".gitlet" + r);
+            new File(meta, "staging").mkdirs();
+            ObjectStore objects = new ObjectStore(meta);
+            StatCache stats = new StatCache(new File(meta, "index"));
+            long start = System.nanoTime();
+            Gitlet.hashfiles(names, bases, objects, stats);
+            cold += System.nanoTime() - start;
+            stats.save();
+            stats = new StatCache(new File(meta, "index"));
+            start = System.nanoTime();
+            Gitlet.hashfiles(names, bases, objects, stats);
+            warm += System.nanoTime() - start;
+        }
+        report("add of " + FILES + " new files", cold, ADD_ROUNDS);
+        report("add of " + FILES + " unchanged files", warm, ADD_ROUNDS);
+    }
+
+    /** Times LineMerge on a file of 100k lines, one side of which edits
+     *  every 1000th line and the other the lines halfway between. */
+    static void mergelines() {
+        StringBuilder base = new StringBuilder();
+        StringBuilder ours = new StringBuilder();
+        StringBuilder theirs = new StringBuilder();
+        for (int i = 0; i < LINES; i += 1) {
+            String line = "line " + i + "\n";
+            base.append(line);
+            ours.append(i % 1000 == 0 ? "ours " + i + "\n" : line);
+            theirs.append(i % 1000 == 500 ? "theirs " + i + "\n" : line);
+        }
+        byte[] b = base.toString().getBytes();
+        byte[] o = ours.toString().getBytes();
+        byte[] t = theirs.toString().getBytes();
+        for (int i = 0; i < WARMUP; i += 1) {
+            new LineMerge(b, o, t);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i += 1) {
+            if (new LineMerge(b, o, t).conflicts() != 0) {
+                throw Utils.error("LineMerge found a conflict.");
+            }
+        }
+        report("line merge of " + LINES + " lines, 200 edits",
+               System.nanoTime() - start, ROUNDS);
+    }
+
+    /** Times planning a merge of two branches of a 50k-file snapshot
+     *  in 500 directories, and resolving it: one branch edits every
+     *  third file, the other takes every fifth file's new version, adds
+     *  and deletes files, and edits a different line of every
+     *  fifteenth file, which the first branch also edited. */
+    static void merge() throws IOException {
+        File dir = tempdir();
+        new File(dir, "staging").mkdirs();
+        ObjectStore objects = new ObjectStore(dir);
+        HashMap<String, String> split = new HashMap<>();
+        HashMap<String, String> ours = new HashMap<>();
+        HashMap<String, String> theirs = new HashMap<>();
+        for (int i = 0; i < MERGE_FILES; i += 1) {
+            String path = "src/module" + (i / 100) + "/File" + i + ".java";
+            String base = "class File" + i + " {\n}\n";
+            split.put(path, blob(objects, base));
+            ours.put(path, blob(objects, i % 3 == 0
+                                ? "// ours\n" + base : base));
+            if (i % 5 == 0) {
+                theirs.put(path, blob(objects, i % 3 == 0
+                                      ? base + "// theirs\n" : "new\n"));
+            } else if (i % 7 != 0) {
+                theirs.put(path, split.get(path));
+            }
+            if (i % 11 == 0) {
+                theirs.put("src/module" + (i / 100) + "/Added" + i
+                           + ".java", blob(objects, "added " + i));
+            }
+        }
+        String s = Tree.write(objects, split);
+        String o = Tree.write(objects, ours);
+        String t = Tree.write(objects, theirs);
+        int actions = 0;
+        for (int i = 0; i < WARMUP; i += 1) {
+            new MergePlan(objects, s, o, t).resolve();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i += 1) {
+            MergePlan plan = new MergePlan(objects, s, o, t);
+            plan.resolve();
+            actions = plan.size();
+        }
+        report("merge plan of " + MERGE_FILES + " files, " + actions
+               + " actions", System.nanoTime() - start, ROUNDS);
+    }
+
+    /** Stores CONTENTS in OBJECTS and returns its blob id. */
+    private static String blob(ObjectStore objects, String contents) {
+        byte[] bytes = contents.getBytes();
+        String sha = Utils.sha1(bytes);
+        objects.writeblob(sha, bytes, null);
+        return sha;
+    }
+
+    /** Adds a synthetic commit with parents PARENT and SECOND to G and
+     *  returns its position. */
+    private static int commit(CommitGraph g, int parent, int second) {
+        _made += 1;
+        return g.add(Utils.sha1("commit " + _made), parent, second,
+                     _made, "Thu Jan 1 00:00:00 1970 -0800", "commit");
+    }
+
+    /** Returns a new temporary directory, deleted with its contents on
+     *  exit. */
+    private static File tempdir() throws IOException {
+        Path dir = Files.createTempDirectory("gitlet-bench");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder())
+                    .forEach(p -> p.toFile().delete());
+            } catch (IOException excp) {
+                return;
+            }
+        }));
+        return dir.toFile();
+    }
+
+    /** Prints the time per operation of a benchmark NAME that ran OPS
+     *  operations in NANOS nanoseconds. */
+    private static void report(String name, long nanos, int ops) {
+        System.out.printf("%-60s %12.3f ms/op%n", name,
+                          nanos / 1e6 / ops);
+    }
+
+    /** Names of all benchmarks. */
+    private static final String[] ALL = {
+        "merge-base", "trees", "add", "merge-lines", "merge"
+    };
+
+    /** Commits in the merge-base benchmark. */
+    private static final int COMMITS = 100000;
+
+    /** Length of the shared trunk in the merge-base benchmark. */
+    private static final int TRUNK = 2000;
+
+    /** Commits between side-branch merges. */
+    private static final int SIDE_EVERY = 100;
+
+    /** Length of each side branch. */
+    private static final int SIDE_LENGTH = 5;
+
+    /** Files in the snapshot of the trees benchmark. */
+    private static final int FILES = 10000;
+
+    /** Lines in the file of the merge-lines benchmark. */
+    private static final int LINES = 100000;
+
+    /** Files in the snapshot of the merge benchmark. */
+    private static final int MERGE_FILES = 50000;
+
+    /** Timed runs of the add benchmark, each with a new object store. */
+    private static final int ADD_ROUNDS = 3;
+
+    /** Untimed runs of each benchmark. */
+    private static final int WARMUP = 5;
+
+    /** Timed runs of each benchmark. */
+    private static final int ROUNDS = 20;
+
+    /** Number of synthetic commits made so far. */
+    private static int _made;
+
+}
@@ -0,0 +1,65 @@
+package gitlet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/** Helpers for Gitlet's compact binary file formats: unsigned varints,
+ *  length-prefixed UTF-8 strings and raw 20-byte object ids.
+ *  @author Santosh Tatipamula
+ */
+class Codec {
+
+    /** Bytes in a raw object id. */
+    static final int ID_BYTES = 20;
+
+    /** Writes the non-negative V to OUT as a little-endian base-128
+     *  varint. */
+    static void writevarint(DataOutput out, int v) throws IOException {
+        while ((v & ~0x7f) != 0) {
+            out.writeByte((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    /** Returns the next varint from IN. */
+    static int readvarint(DataInput in) throws IOException {
+        int result = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+
+    /** Writes S to OUT as a varint length followed by its UTF-8 bytes. */
+    static void writestring(DataOutput out, String s) throws IOException {
+        byte[] raw = s.getBytes(StandardCharsets.UTF_8);
+        writevarint(out, raw.length);
+        out.write(raw);
+    }
+
+    /** Returns the next string written by writestring from IN. */
+    static String readstring(DataInput in) throws IOException {
+        byte[] raw = new byte[readvarint(in)];
+        in.readFully(raw);
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    /** Writes the hex object id ID to OUT as 20 raw bytes. */
+    static void writeid(DataOutput out, String id) throws IOException {
+        out.write(Utils.hexToBytes(id));
+    }
+
+    /** Returns the next raw object id from IN, in hex. */
+    static String readid(DataInput in) throws IOException {
+        byte[] raw = new byte[ID_BYTES];
+        in.readFully(raw);
+        return Utils.bytesToHex(raw);
+    }
+
+}
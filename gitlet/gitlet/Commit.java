@@ -1,37 +1,126 @@
 package gitlet;
 
-import java.io.Serializable;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Date;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
 
 /** The "commit" class of Gitlet, the tiny stupid version-control system.
  *  @author Santosh Tatipamula
  */
 
-public class Commit implements Serializable {
+public class Commit {
 
     /** A commit is initialized with a message (string),
-     * a file mapping (hashmap)
+     * the id of the tree holding its files (string),
      * an array of parent(s) (string array), and
      * a boolean that indicates if the commit
      * is the first commit in the gitlet repository.
-     * MESSAGE MAPPING FIRST PARENTS*/
+     * MESSAGE TREE FIRST PARENTS*/
 
-    public Commit(String message, HashMap<String,
-            String> mapping, boolean first, String[] parents) {
+    public Commit(String message, String tree, boolean first,
+                  String[] parents) {
         _message = message;
-        _mapping = mapping;
+        _tree = tree;
         _first = first;
         _parents = parents;
         if (first) {
             _timestamp = "Wed Dec 31 16:00:00 1969 -0800";
         } else {
             Date d = new Date();
-            SimpleDateFormat s =
-                    new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy");
+            SimpleDateFormat s = new SimpleDateFormat(DATE_FORMAT);
             _timestamp = s.format(d) + " -0800";
+            _time = d.getTime();
+        }
+    }
+
+    /** A commit with the given MESSAGE, TREE, FIRST flag, PARENTS and
+     *  TIMESTAMP, as read back by decode. */
+    private Commit(String message, String tree, boolean first,
+                   String[] parents, String timestamp) {
+        _message = message;
+        _tree = tree;
+        _first = first;
+        _parents = parents;
+        _timestamp = timestamp;
+        if (!first) {
+            _time = parsetime(timestamp);
+        }
+    }
+
+    /** The commit with id ID that an older Gitlet stored with MESSAGE,
+     *  FIRST flag, PARENTS and TIMESTAMP, whose files are now in the tree
+     *  TREE.  Its id was computed from its files rather than from TREE,
+     *  so it is kept as stored. */
+    Commit(String id, String message, String tree, boolean first,
+           String[] parents, String timestamp) {
+        this(message, tree, first, parents, timestamp);
+        _id = id;
+    }
+
+    /** Returns this commit in Gitlet's compact binary format: a magic
+     *  number and version, a flags byte, the message and timestamp, the
+     *  raw ids of the parents, and then the raw id of its tree.  Strings
+     *  and counts are varint-prefixed.
+     *  @return bytes */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(bytes))) {
+            out.writeShort(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(_first ? FIRST : 0);
+            Codec.writestring(out, _message);
+            Codec.writestring(out, _timestamp);
+            int nparents = _parents == null ? 0 : _parents.length;
+            Codec.writevarint(out, nparents);
+            for (int i = 0; i < nparents; i += 1) {
+                Codec.writeid(out, _parents[i]);
+            }
+            Codec.writeid(out, _tree);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns true iff DATA starts like the output of encode, rather
+     *  than being a commit stored by an older Gitlet. */
+    static boolean encoded(byte[] data) {
+        return data.length >= 3
+            && ((data[0] & 0xff) << 8 | (data[1] & 0xff)) == MAGIC
+            && (data[2] & 0xff) == VERSION;
+    }
+
+    /** Returns the commit encoded in DATA by encode. */
+    static Commit decode(byte[] data) {
+        try (DataInputStream in = new DataInputStream(
+                 new ByteArrayInputStream(data))) {
+            if (in.readUnsignedShort() != MAGIC
+                    || in.readUnsignedByte() != VERSION) {
+                throw Utils.error("Unknown commit format.");
+            }
+            boolean first = (in.readUnsignedByte() & FIRST) != 0;
+            String message = Codec.readstring(in);
+            String timestamp = Codec.readstring(in);
+            int nparents = Codec.readvarint(in);
+            String[] parents = null;
+            if (nparents > 0) {
+                parents = new String[nparents];
+                for (int i = 0; i < nparents; i += 1) {
+                    parents[i] = Codec.readid(in);
+                }
+            }
+            String tree = Codec.readid(in);
+            return new Commit(message, tree, first, parents, timestamp);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
@@ -41,10 +130,10 @@ public class Commit implements Serializable {
         return _message;
     }
 
-    /** Accessor for file mapping.
-     * @return hashmap*/
-    public HashMap<String, String> getmapping() {
-        return _mapping;
+    /** Accessor for the id of the commit's tree.
+     * @return string*/
+    public String gettree() {
+        return _tree;
     }
 
     /** Accessor for parent(s) array.
@@ -59,24 +148,52 @@ public class Commit implements Serializable {
         return _timestamp;
     }
 
+    /** Returns the time this commit was made, in milliseconds since the
+     *  epoch.  A commit read back from its timestamp has lost the
+     *  milliseconds.
+     *  @return time */
+    public long gettime() {
+        return _time;
+    }
+
+    /** Returns the time denoted by the commit timestamp STAMP, or 0 if it
+     *  cannot be parsed.  Timestamps are written in the local time zone
+     *  and always end in "-0800" whatever the zone, so the suffix is
+     *  ignored and the rest is read in the local zone.
+     *  @return time */
+    static long parsetime(String stamp) {
+        Date d = new SimpleDateFormat(DATE_FORMAT)
+            .parse(stamp, new ParsePosition(0));
+        return d == null ? 0 : d.getTime();
+    }
+
     /** Hashcode.
      * @return string*/
     public String hash() {
-        String parents = Arrays.toString(_parents);
-        String mapping;
-        if (_mapping == null) {
-            mapping = "";
-        } else {
-            mapping = _mapping.toString();
+        if (_id != null) {
+            return _id;
         }
-        return Utils.sha1(_message, parents, _timestamp, mapping);
+        String parents = Arrays.toString(_parents);
+        return Utils.sha1(_message, parents, _timestamp, _tree);
     }
 
+    /** Format of timestamps, less the constant zone suffix. */
+    private static final String DATE_FORMAT = "EEE MMM d HH:mm:ss yyyy";
+
+    /** First two bytes of an encoded commit. */
+    private static final int MAGIC = 0x4743;
+
+    /** Version of the encoding written by encode. */
+    private static final int VERSION = 2;
+
+    /** Flag bit marking the first commit of a repository. */
+    private static final int FIRST = 1;
+
     /** A commit's message.*/
     private String _message;
 
-    /** A commit's file mapping, names of blobs to sha IDs of blobs.*/
-    private HashMap<String, String> _mapping;
+    /** The id of the tree holding a commit's files.*/
+    private String _tree;
 
     /** Whether a commit is the first commit in a repo.*/
     private boolean _first;
@@ -87,5 +204,11 @@ public class Commit implements Serializable {
     /** The timestamp of a commit.*/
     private String _timestamp;
 
+    /** The time of a commit in milliseconds since the epoch.*/
+    private long _time;
+
+    /** The id of a commit stored by an older Gitlet, or null.*/
+    private String _id;
+
 }
 
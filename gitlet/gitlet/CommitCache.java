@@ -0,0 +1,99 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/** A bounded cache of commits read from the object store, keyed by id.
+ *  Commits are never modified once made, so a cached commit can be handed
+ *  out any number of times.  Each commit is charged roughly the memory it
+ *  occupies, and the least recently used commits are evicted once the
+ *  total exceeds the budget.  Hits and misses are counted for "--stats".
+ *  @author Santosh Tatipamula
+ */
+class CommitCache {
+
+    /** A cache holding commits of total weight at most BUDGET bytes. */
+    CommitCache(long budget) {
+        _budget = budget;
+        _entries = new LinkedHashMap<>(INITIAL, LOAD, true);
+    }
+
+    /** Returns the cached commit with id ID, or null, counting a hit or
+     *  a miss. */
+    Commit get(String id) {
+        Entry entry = _entries.get(id);
+        if (entry == null) {
+            _misses += 1;
+            return null;
+        }
+        _hits += 1;
+        return entry._commit;
+    }
+
+    /** Caches commit C with id ID, whose encoded form is SIZE bytes, then
+     *  evicts the least recently used commits until the total weight is
+     *  within the budget. */
+    void put(String id, Commit c, int size) {
+        Entry entry = new Entry(c, size + OVERHEAD);
+        Entry old = _entries.put(id, entry);
+        if (old != null) {
+            _weight -= old._weight;
+        }
+        _weight += entry._weight;
+        Iterator<Entry> eldest = _entries.values().iterator();
+        while (_weight > _budget && eldest.hasNext()) {
+            _weight -= eldest.next()._weight;
+            eldest.remove();
+        }
+    }
+
+    /** Returns a one-line summary of the cache's use.
+     *  @return string */
+    String stats() {
+        return String.format("Commit cache: %d hits, %d misses, "
+                             + "%d commits (%d bytes) cached.",
+                             _hits, _misses, _entries.size(), _weight);
+    }
+
+    /** A cached commit and its weight. */
+    private static class Entry {
+        /** An entry for commit COMMIT of weight WEIGHT. */
+        Entry(Commit commit, long weight) {
+            _commit = commit;
+            _weight = weight;
+        }
+
+        /** The commit. */
+        private final Commit _commit;
+
+        /** Its estimated size in bytes. */
+        private final long _weight;
+    }
+
+    /** Estimated bytes occupied by a cached commit beyond its encoded
+     *  size: the Commit, its strings and the cache entry. */
+    private static final int OVERHEAD = 256;
+
+    /** Initial capacity of the table. */
+    private static final int INITIAL = 256;
+
+    /** Load factor of the table. */
+    private static final float LOAD = 0.75f;
+
+    /** Largest total weight kept. */
+    private final long _budget;
+
+    /** Commit and weight of each cached id, least recently used
+     *  first. */
+    private final LinkedHashMap<String, Entry> _entries;
+
+    /** Total weight of the cached commits. */
+    private long _weight;
+
+    /** Number of lookups answered from the cache. */
+    private long _hits;
+
+    /** Number of lookups not answered from the cache. */
+    private long _misses;
+
+}
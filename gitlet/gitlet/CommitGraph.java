@@ -0,0 +1,424 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** The commit graph of a Gitlet repository: one fixed-width record per
+ *  commit giving its raw id, the positions of its parents, its generation
+ *  number (one more than the largest among its parents) and its time,
+ *  plus a side file holding each commit's date string and message.
+ *  Commits are numbered in the order they were added, which is always a
+ *  topological order, and are referred to by those numbers.  Both files
+ *  are append-only and are memory-mapped for reading.  A commit's text
+ *  is written before its record, and a record left incomplete, or
+ *  pointing past the end of the text, by a command that was killed is
+ *  ignored and overwritten by the next commit added.  Such a commit is
+ *  simply added again when next needed.
+ *  @author Santosh Tatipamula
+ */
+class CommitGraph {
+
+    /** Position standing for "no commit". */
+    static final int NONE = -1;
+
+    /** The commit graph stored in directory DIR. */
+    CommitGraph(File dir) {
+        _dir = dir;
+        _nodes = new File(dir, "nodes");
+        _text = new File(dir, "text");
+        _positions = new HashMap<>();
+    }
+
+    /** Returns the commit graph stored in directory DIR, building it from
+     *  the commits in OBJECTS if it has never been written. */
+    static CommitGraph open(File dir, ObjectStore objects) {
+        CommitGraph g = new CommitGraph(dir);
+        if (!g.exists()) {
+            for (String id : objects.commitids()) {
+                g.node(objects, id);
+            }
+        }
+        return g;
+    }
+
+    /** Returns true iff the graph has been written to disk. */
+    boolean exists() {
+        return _nodes.isFile();
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        load();
+        return _size;
+    }
+
+    /** Returns the position of the commit with id ID, or NONE if it is not
+     *  in the graph.  The search starts from the newest commits, which
+     *  are the ones branch heads usually name. */
+    int position(String id) {
+        Integer known = _positions.get(id);
+        if (known != null) {
+            return known;
+        }
+        load();
+        while (_unscanned > 0) {
+            _unscanned -= 1;
+            String other = id(_unscanned);
+            _positions.put(other, _unscanned);
+            if (other.equals(id)) {
+                return _unscanned;
+            }
+        }
+        return NONE;
+    }
+
+    /** Returns the id of the commit at position K. */
+    String id(int k) {
+        load();
+        byte[] raw = new byte[ID_BYTES];
+        _map.get(k * RECORD, raw);
+        return Utils.bytesToHex(raw);
+    }
+
+    /** Returns the first parent of commit K, or NONE. */
+    int parent(int k) {
+        load();
+        return _map.getInt(k * RECORD + ID_BYTES);
+    }
+
+    /** Returns the second (merged-in) parent of commit K, or NONE. */
+    int secondparent(int k) {
+        load();
+        return _map.getInt(k * RECORD + ID_BYTES + Integer.BYTES);
+    }
+
+    /** Returns the generation number of commit K. */
+    int generation(int k) {
+        load();
+        return _map.getInt(k * RECORD + ID_BYTES + 2 * Integer.BYTES);
+    }
+
+    /** Returns the time of commit K in milliseconds since the epoch. */
+    long time(int k) {
+        load();
+        return _map.getLong(k * RECORD + ID_BYTES + 3 * Integer.BYTES);
+    }
+
+    /** Returns the positions of all commits, newest first by time, and
+     *  among commits made at the same time, last added first.  Positions
+     *  alone are no guide to age, since commits fetched from another
+     *  repository are added after newer local ones.
+     *  @return positions */
+    Integer[] newestfirst() {
+        Integer[] order = new Integer[size()];
+        for (int k = 0; k < order.length; k += 1) {
+            order[k] = order.length - 1 - k;
+        }
+        Arrays.sort(order, Comparator.comparingLong(
+            (Integer k) -> time(k)).reversed());
+        return order;
+    }
+
+    /** Returns the date line of commit K. */
+    String date(int k) {
+        return text(k, 0);
+    }
+
+    /** Returns the message of commit K. */
+    String message(int k) {
+        return text(k, 1);
+    }
+
+    /** Returns the position of commit ID, first adding it and any of its
+     *  ancestors that are missing, reading them from OBJECTS. */
+    int node(ObjectStore objects, String id) {
+        int k = position(id);
+        if (k != NONE) {
+            return k;
+        }
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        pending.push(id);
+        while (!pending.isEmpty()) {
+            String top = pending.peek();
+            if (position(top) != NONE) {
+                pending.pop();
+                continue;
+            }
+            Commit c = objects.readcommit(top);
+            boolean ready = true;
+            if (c.getparents() != null) {
+                for (String p : c.getparents()) {
+                    if (position(p) == NONE) {
+                        pending.push(p);
+                        ready = false;
+                    }
+                }
+            }
+            if (ready) {
+                add(c);
+                pending.pop();
+            }
+        }
+        return position(id);
+    }
+
+    /** Adds commit C, whose parents must already be in the graph, and
+     *  returns its position. */
+    int add(Commit c) {
+        int[] parents = new int[] {NONE, NONE};
+        String[] ids = c.getparents();
+        for (int i = 0; ids != null && i < ids.length; i += 1) {
+            parents[i] = position(ids[i]);
+        }
+        return add(c.hash(), parents[0], parents[1], c.gettime(),
+                   c.gettimestamp(), c.getmessage());
+    }
+
+    /** Adds a commit with id ID, parents at positions PARENT and SECOND
+     *  (either may be NONE), time TIME, date line DATE and message
+     *  MESSAGE, and returns its position. */
+    int add(String id, int parent, int second, long time, String date,
+            String message) {
+        int k = size();
+        int gen = 1;
+        if (parent != NONE) {
+            gen = Math.max(gen, generation(parent) + 1);
+        }
+        if (second != NONE) {
+            gen = Math.max(gen, generation(second) + 1);
+        }
+        _dir.mkdirs();
+        long offset = _text.length();
+        try {
+            if (_nodes.length() > (long) k * RECORD) {
+                try (FileChannel ch = FileChannel.open(_nodes.toPath(),
+                         StandardOpenOption.WRITE)) {
+                    ch.truncate((long) k * RECORD);
+                }
+            }
+            try (DataOutputStream text = new DataOutputStream(
+                     new BufferedOutputStream(
+                         new FileOutputStream(_text, true)))) {
+                writestring(text, date);
+                writestring(text, message);
+            }
+            try (DataOutputStream nodes = new DataOutputStream(
+                     new BufferedOutputStream(
+                         new FileOutputStream(_nodes, true)))) {
+                nodes.write(Utils.hexToBytes(id));
+                nodes.writeInt(parent);
+                nodes.writeInt(second);
+                nodes.writeInt(gen);
+                nodes.writeLong(time);
+                nodes.writeLong(offset);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _unsynced = true;
+        _map = null;
+        _textmap = null;
+        _positions.put(id, k);
+        return k;
+    }
+
+    /** Forces the commits added since the last sync to disk. */
+    void sync() {
+        if (_unsynced) {
+            Journal.force(List.of(_text, _nodes, _dir));
+            _unsynced = false;
+        }
+    }
+
+    /** Returns true iff commit A is commit B or one of its ancestors.
+     *  Commits with generation numbers at or below A's need not be
+     *  searched past. */
+    boolean isancestor(int a, int b) {
+        int gen = generation(a);
+        boolean[] seen = new boolean[size()];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(b);
+        while (!queue.isEmpty()) {
+            int k = queue.poll();
+            if (k == a) {
+                return true;
+            }
+            if (seen[k] || generation(k) <= gen) {
+                continue;
+            }
+            seen[k] = true;
+            if (parent(k) != NONE) {
+                queue.add(parent(k));
+            }
+            if (secondparent(k) != NONE) {
+                queue.add(secondparent(k));
+            }
+        }
+        return false;
+    }
+
+    /** Returns the best common ancestor of commits A and B: of all the
+     *  commits reachable from both, one with the largest generation
+     *  number.  Returns NONE if they have no common ancestor.  Both sides
+     *  are walked together, highest generation first, with every commit
+     *  marked by the side(s) it is reachable from.  A commit's marks are
+     *  final when it is dequeued, since all its descendants have larger
+     *  generations, so the first commit dequeued with both marks is the
+     *  answer and the walk stops there. */
+    int mergebase(int a, int b) {
+        if (a == b) {
+            return a;
+        }
+        byte[] marks = new byte[size()];
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+            (x, y) -> Integer.compare(generation(y), generation(x)));
+        marks[a] = FROM_A;
+        marks[b] = FROM_B;
+        queue.add(a);
+        queue.add(b);
+        while (!queue.isEmpty()) {
+            int k = queue.poll();
+            byte mark = marks[k];
+            if (mark == (FROM_A | FROM_B)) {
+                return k;
+            }
+            for (int p : new int[] {parent(k), secondparent(k)}) {
+                if (p != NONE && (marks[p] | mark) != marks[p]) {
+                    marks[p] |= mark;
+                    queue.add(p);
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /** Returns string number WHICH (0 for the date, 1 for the message) of
+     *  commit K. */
+    private String text(int k, int which) {
+        load();
+        int pos = (int) _map.getLong(k * RECORD + ID_BYTES
+                                     + 3 * Integer.BYTES + Long.BYTES);
+        for (int i = 0; i < which; i += 1) {
+            pos += Integer.BYTES + _textmap.getInt(pos);
+        }
+        byte[] raw = new byte[_textmap.getInt(pos)];
+        _textmap.get(pos + Integer.BYTES, raw);
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    /** Maps both files into memory if that has not been done yet. */
+    private void load() {
+        if (_map != null) {
+            return;
+        }
+        if (exists()) {
+            _map = map(_nodes);
+            _textmap = map(_text);
+        } else {
+            _map = ByteBuffer.allocate(0);
+            _textmap = _map;
+        }
+        _size = _map.capacity() / RECORD;
+        while (_size > 0 && !complete(_size - 1)) {
+            _size -= 1;
+        }
+        if (!_loaded) {
+            _unscanned = _size;
+            _loaded = true;
+        }
+    }
+
+    /** Returns true iff the date and message of commit K lie wholly
+     *  within the text file. */
+    private boolean complete(int k) {
+        long pos = _map.getLong(k * RECORD + ID_BYTES + 3 * Integer.BYTES
+                                + Long.BYTES);
+        for (int i = 0; i < 2; i += 1) {
+            if (pos < 0 || pos + Integer.BYTES > _textmap.capacity()) {
+                return false;
+            }
+            int length = _textmap.getInt((int) pos);
+            if (length < 0) {
+                return false;
+            }
+            pos += Integer.BYTES + length;
+        }
+        return pos <= _textmap.capacity();
+    }
+
+    /** Returns F mapped read-only into memory. */
+    private static ByteBuffer map(File f) {
+        try (FileChannel ch = FileChannel.open(f.toPath())) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes S to OUT as a length followed by its UTF-8 bytes. */
+    private static void writestring(DataOutputStream out, String s)
+        throws IOException {
+        byte[] raw = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(raw.length);
+        out.write(raw);
+    }
+
+    /** Mark of commits reachable from the first argument of mergebase. */
+    private static final byte FROM_A = 1;
+
+    /** Mark of commits reachable from the second argument of
+     *  mergebase. */
+    private static final byte FROM_B = 2;
+
+    /** Bytes in a raw commit id. */
+    private static final int ID_BYTES = 20;
+
+    /** Bytes per node record. */
+    private static final int RECORD = ID_BYTES + 3 * Integer.BYTES
+        + 2 * Long.BYTES;
+
+    /** Directory holding the graph. */
+    private File _dir;
+
+    /** The file of node records. */
+    private File _nodes;
+
+    /** The file of dates and messages. */
+    private File _text;
+
+    /** The mapped node records, or null if not yet mapped. */
+    private ByteBuffer _map;
+
+    /** The mapped text file, or null if not yet mapped. */
+    private ByteBuffer _textmap;
+
+    /** True once the graph has been mapped for the first time. */
+    private boolean _loaded;
+
+    /** Number of commits in the graph. */
+    private int _size;
+
+    /** Positions below this one have not yet been entered in
+     *  _positions. */
+    private int _unscanned;
+
+    /** True iff commits have been added since the last sync. */
+    private boolean _unsynced;
+
+    /** Positions of the commits looked up or scanned so far. */
+    private HashMap<String, Integer> _positions;
+
+}
@@ -0,0 +1,165 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/** An optional server that keeps one repository open between commands.
+ *  "java gitlet.Main daemon" serves the repository in the current
+ *  directory on the Unix domain socket .gitlet/daemon.sock until it is
+ *  sent "daemon stop".  While it runs, Main forwards each command to it,
+ *  so the repository state, object store, commit graph, message index
+ *  and stat cache stay in memory and are only written back, not reread.
+ *  Without a daemon, Main runs commands itself.  Commands are served one
+ *  at a time, and all commands on the repository should go through the
+ *  daemon while it runs.
+ *
+ *  A request is the number of arguments followed by each one, and the
+ *  response is the length of the command's output followed by the
+ *  output, with strings and lengths written as by DataOutputStream.
+ *  @author Santosh Tatipamula
+ */
+class Daemon {
+
+    /** Path of the daemon's socket. */
+    static final String SOCKET = ".gitlet/daemon.sock";
+
+    /** Sends the command ARGS to the daemon serving the current
+     *  directory, if there is one, and copies its output to OUT.
+     *  Returns false if no daemon is listening.  Once connected, the
+     *  command may run even if the connection then fails, so that is
+     *  reported on OUT rather than by returning false, which would have
+     *  the command run a second time.
+     *  @return boolean */
+    static boolean forward(String[] args, PrintStream out) {
+        File sock = new File(SOCKET);
+        if (!sock.exists()) {
+            return false;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(
+                UnixDomainSocketAddress.of(sock.toPath()));
+        } catch (IOException excp) {
+            return false;
+        }
+        try (SocketChannel ch = channel) {
+            DataOutputStream req = new DataOutputStream(
+                Channels.newOutputStream(ch));
+            req.writeInt(args.length);
+            for (String arg : args) {
+                req.writeUTF(arg);
+            }
+            req.flush();
+            DataInputStream resp = new DataInputStream(
+                Channels.newInputStream(ch));
+            byte[] output = new byte[resp.readInt()];
+            resp.readFully(output);
+            out.write(output);
+            out.flush();
+        } catch (IOException excp) {
+            out.println("Lost the connection to the Gitlet daemon; the "
+                        + "command may not have run: " + excp.getMessage());
+        }
+        return true;
+    }
+
+    /** Serves commands on the repository in the current directory until
+     *  told to stop.  The socket is bound under a temporary name and
+     *  renamed once it is listening, so clients never find a socket that
+     *  refuses them. */
+    static void serve() {
+        File sock = new File(SOCKET);
+        if (sock.exists()) {
+            try {
+                SocketChannel.open(
+                    UnixDomainSocketAddress.of(sock.toPath())).close();
+                System.out.println("A daemon is already running.");
+                return;
+            } catch (IOException excp) {
+                sock.delete();
+            }
+        }
+        RepoLock lock = RepoLock.acquire(new File(".gitlet"), false);
+        Gitlet repo;
+        try {
+            repo = Gitlet.open();
+        } finally {
+            lock.close();
+        }
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            File fresh = new File(SOCKET + ".tmp");
+            fresh.delete();
+            server.bind(UnixDomainSocketAddress.of(fresh.toPath()));
+            Files.move(fresh.toPath(), sock.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+            boolean running = true;
+            while (running) {
+                try (SocketChannel ch = server.accept()) {
+                    DataInputStream req = new DataInputStream(
+                        Channels.newInputStream(ch));
+                    String[] args = new String[req.readInt()];
+                    for (int i = 0; i < args.length; i += 1) {
+                        args[i] = req.readUTF();
+                    }
+                    ByteArrayOutputStream output =
+                        new ByteArrayOutputStream();
+                    if (args.length == 2 && args[0].equals("daemon")
+                            && args[1].equals("stop")) {
+                        running = false;
+                    } else {
+                        repo = run(repo, args, output);
+                    }
+                    DataOutputStream resp = new DataOutputStream(
+                        Channels.newOutputStream(ch));
+                    resp.writeInt(output.size());
+                    output.writeTo(resp);
+                    resp.flush();
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            sock.delete();
+        }
+    }
+
+    /** Runs the command ARGS on REPO under the repository lock, capturing
+     *  its standard output in OUTPUT, and returns the repository to use
+     *  for later commands: REPO itself, a freshly opened one if another
+     *  process changed the repository, or null if the command failed in
+     *  a way that may have left REPO's in-memory state inconsistent, so
+     *  that the next command opens it afresh under the lock.
+     *  @return repository */
+    private static Gitlet run(Gitlet repo, String[] args,
+                              ByteArrayOutputStream output) {
+        PrintStream stdout = System.out;
+        PrintStream capture =
+            new PrintStream(output, true, StandardCharsets.UTF_8);
+        System.setOut(capture);
+        try {
+            return Main.locked(repo, args);
+        } catch (RuntimeException excp) {
+            capture.println(excp.getMessage());
+            return null;
+        } finally {
+            capture.flush();
+            System.setOut(stdout);
+        }
+    }
+
+}
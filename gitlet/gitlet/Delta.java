@@ -0,0 +1,179 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/** Binary deltas between two versions of a blob.  A delta is a header
+ *  giving the base and result lengths followed by a sequence of COPY
+ *  (offset and length in the base) and INSERT (literal bytes) operations,
+ *  with all numbers written as Codec varints.
+ *  Matches are found by indexing the base in fixed-size blocks and
+ *  sliding a rolling hash over the target.
+ *  @author Santosh Tatipamula
+ */
+class Delta {
+
+    /** Returns a delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            create(base, target, out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Writes a delta that turns BASE into TARGET to OUT. */
+    private static void create(byte[] base, byte[] target,
+                               DataOutputStream out) throws IOException {
+        Codec.writevarint(out, base.length);
+        Codec.writevarint(out, target.length);
+        int[] table = index(base);
+        int mask = table.length - 1;
+        int pending = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            int cand = table[mix(h) & mask];
+            if (cand >= 0 && same(base, cand, target, i, BLOCK)) {
+                int b = cand;
+                int t = i;
+                while (b > 0 && t > pending && base[b - 1] == target[t - 1]) {
+                    b -= 1;
+                    t -= 1;
+                }
+                int len = i - t + BLOCK;
+                while (b + len < base.length && t + len < target.length
+                       && base[b + len] == target[t + len]) {
+                    len += 1;
+                }
+                insert(out, target, pending, t);
+                Codec.writevarint(out, COPY);
+                Codec.writevarint(out, b);
+                Codec.writevarint(out, len);
+                i = t + len;
+                pending = i;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK < target.length) {
+                    h = (h - (target[i] & 0xff) * TOP) * RADIX
+                        + (target[i + BLOCK] & 0xff);
+                }
+                i += 1;
+            }
+        }
+        insert(out, target, pending, target.length);
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        try (DataInputStream in = new DataInputStream(
+                 new ByteArrayInputStream(delta))) {
+            int baselen = Codec.readvarint(in);
+            int length = Codec.readvarint(in);
+            if (baselen != base.length) {
+                throw Utils.error("Delta does not match its base.");
+            }
+            byte[] result = new byte[length];
+            int n = 0;
+            while (in.available() > 0) {
+                int op = Codec.readvarint(in);
+                if (op == COPY) {
+                    int offset = Codec.readvarint(in);
+                    int len = Codec.readvarint(in);
+                    System.arraycopy(base, offset, result, n, len);
+                    n += len;
+                } else {
+                    int len = Codec.readvarint(in);
+                    in.readFully(result, n, len);
+                    n += len;
+                }
+            }
+            if (n != length) {
+                throw Utils.error("Corrupt delta.");
+            }
+            return result;
+        } catch (IOException | IndexOutOfBoundsException excp) {
+            throw Utils.error("Corrupt delta.");
+        }
+    }
+
+    /** Returns a hash table mapping block hashes of BASE to the offset of
+     *  a block with that hash, or -1.  Its size is a power of two. */
+    private static int[] index(byte[] base) {
+        int size = 1;
+        while (size < 2 * (base.length / BLOCK) + 1) {
+            size <<= 1;
+        }
+        int[] table = new int[size];
+        Arrays.fill(table, -1);
+        for (int off = 0; off + BLOCK <= base.length; off += BLOCK) {
+            table[mix(hash(base, off)) & (size - 1)] = off;
+        }
+        return table;
+    }
+
+    /** Returns the polynomial hash of the BLOCK bytes of DATA starting at
+     *  OFF. */
+    private static int hash(byte[] data, int off) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k += 1) {
+            h = h * RADIX + (data[off + k] & 0xff);
+        }
+        return h;
+    }
+
+    /** Returns H with its high bits folded into its low bits. */
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /** Returns true iff the LEN bytes of A at AOFF equal those of B at
+     *  BOFF. */
+    private static boolean same(byte[] a, int aoff, byte[] b, int boff,
+                                int len) {
+        return Arrays.equals(a, aoff, aoff + len, b, boff, boff + len);
+    }
+
+    /** Writes an INSERT of DATA[START .. END) to OUT, if non-empty. */
+    private static void insert(DataOutputStream out, byte[] data,
+                               int start, int end) throws IOException {
+        if (end > start) {
+            Codec.writevarint(out, INSERT);
+            Codec.writevarint(out, end - start);
+            out.write(data, start, end - start);
+        }
+    }
+
+    /** Bytes per indexed block. */
+    private static final int BLOCK = 16;
+
+    /** Multiplier of the rolling hash. */
+    private static final int RADIX = 257;
+
+    /** RADIX to the power BLOCK - 1, for removing the oldest byte. */
+    private static final int TOP = top();
+
+    /** Returns RADIX to the power BLOCK - 1. */
+    private static int top() {
+        int result = 1;
+        for (int k = 1; k < BLOCK; k += 1) {
+            result *= RADIX;
+        }
+        return result;
+    }
+
+    /** Operation code of a copy from the base. */
+    private static final int COPY = 1;
+
+    /** Operation code of literal bytes. */
+    private static final int INSERT = 0;
+
+}
@@ -0,0 +1,340 @@
+package gitlet;
+
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** Line-by-line comparison of texts.  Texts are byte arrays split after
+ *  each newline (the last line may lack one).  Lines are first replaced
+ *  by small integer ids, equal lines getting equal ids, so that the
+ *  comparison itself only looks at int arrays.  Matching uses Myers'
+ *  O(ND) algorithm in its linear-space form: common prefixes and
+ *  suffixes are stripped, and the rest is split at the middle snake of
+ *  a shortest edit script until no differences remain.  Differences
+ *  are printed in the unified format read by patch.
+ *  @author Santosh Tatipamula
+ */
+class Diff {
+
+    /** Returns the offsets in TEXT at which its lines start, followed by
+     *  TEXT's length, so that line K is bytes [B[K], B[K + 1]).
+     *  @return int array */
+    static int[] bounds(byte[] text) {
+        int n = 0;
+        for (byte b : text) {
+            if (b == '\n') {
+                n += 1;
+            }
+        }
+        if (text.length > 0 && text[text.length - 1] != '\n') {
+            n += 1;
+        }
+        int[] result = new int[n + 1];
+        int k = 1;
+        for (int i = 0; i < text.length; i += 1) {
+            if (text[i] == '\n' && k < n) {
+                result[k] = i + 1;
+                k += 1;
+            }
+        }
+        result[n] = text.length;
+        return result;
+    }
+
+    /** Returns the line ids of each of TEXTS, split at BOUNDS, numbering
+     *  distinct lines from 0 in order of first appearance across all of
+     *  them.
+     *  @return an int array per text */
+    static int[][] lineids(byte[][] texts, int[][] bounds) {
+        int total = 0;
+        for (int[] b : bounds) {
+            total += b.length - 1;
+        }
+        int size = Integer.highestOneBit(Math.max(1, total)) * 4;
+        int[] table = new int[size];
+        int[] owner = new int[total];
+        int[] start = new int[total];
+        int[] end = new int[total];
+        int distinct = 0;
+        int[][] result = new int[texts.length][];
+        for (int t = 0; t < texts.length; t += 1) {
+            byte[] text = texts[t];
+            int[] b = bounds[t];
+            int[] ids = new int[b.length - 1];
+            for (int k = 0; k < ids.length; k += 1) {
+                int h = hash(text, b[k], b[k + 1]);
+                int slot = h & (size - 1);
+                while (true) {
+                    int id = table[slot] - 1;
+                    if (id < 0) {
+                        table[slot] = distinct + 1;
+                        owner[distinct] = t;
+                        start[distinct] = b[k];
+                        end[distinct] = b[k + 1];
+                        ids[k] = distinct;
+                        distinct += 1;
+                        break;
+                    }
+                    if (Arrays.equals(text, b[k], b[k + 1], texts[owner[id]],
+                                      start[id], end[id])) {
+                        ids[k] = id;
+                        break;
+                    }
+                    slot = (slot + 1) & (size - 1);
+                }
+            }
+            result[t] = ids;
+        }
+        return result;
+    }
+
+    /** Returns, for each line of A, the index of the line of B matched
+     *  with it in a longest common subsequence of A and B found by
+     *  Myers' algorithm, or -1 if it is not matched.  Matched indices
+     *  increase.
+     *  @return int array */
+    static int[] match(int[] a, int[] b) {
+        int[] result = new int[a.length];
+        Arrays.fill(result, -1);
+        int[] v = new int[2 * (a.length + b.length + 2)];
+        int[] w = new int[v.length];
+        ArrayDeque<int[]> work = new ArrayDeque<>();
+        work.push(new int[] {0, a.length, 0, b.length});
+        while (!work.isEmpty()) {
+            int[] range = work.pop();
+            int alo = range[0];
+            int ahi = range[1];
+            int blo = range[2];
+            int bhi = range[3];
+            while (alo < ahi && blo < bhi && a[alo] == b[blo]) {
+                result[alo] = blo;
+                alo += 1;
+                blo += 1;
+            }
+            while (alo < ahi && blo < bhi && a[ahi - 1] == b[bhi - 1]) {
+                ahi -= 1;
+                bhi -= 1;
+                result[ahi] = bhi;
+            }
+            if (alo == ahi || blo == bhi) {
+                continue;
+            }
+            int[] split = middle(a, alo, ahi, b, blo, bhi, v, w);
+            if (split != null) {
+                work.push(new int[] {split[0], ahi, split[1], bhi});
+                work.push(new int[] {alo, split[0], blo, split[1]});
+            }
+        }
+        return result;
+    }
+
+    /** Prints to OUT the differences between the versions A and B of the
+     *  file PATH, either of which is null if the file is missing, in
+     *  unified format with CONTEXT lines of context.  Prints nothing if
+     *  they are the same. */
+    static void unified(PrintWriter out, String path, byte[] a, byte[] b) {
+        if (a != null && b != null && Arrays.equals(a, b)) {
+            return;
+        }
+        out.print("diff --git a/" + path + " b/" + path + "\n");
+        byte[] old = a == null ? new byte[0] : a;
+        byte[] now = b == null ? new byte[0] : b;
+        if (binary(old) || binary(now)) {
+            out.print("Binary files " + (a == null ? NULL : "a/" + path)
+                      + " and " + (b == null ? NULL : "b/" + path)
+                      + " differ\n");
+            return;
+        }
+        out.print("--- " + (a == null ? NULL : "a/" + path) + "\n");
+        out.print("+++ " + (b == null ? NULL : "b/" + path) + "\n");
+        int[][] bounds = {bounds(old), bounds(now)};
+        int[][] ids = lineids(new byte[][] {old, now}, bounds);
+        ArrayList<int[]> changes = changes(match(ids[0], ids[1]),
+                                           ids[1].length);
+        for (int first = 0, last; first < changes.size(); first = last) {
+            last = first + 1;
+            while (last < changes.size()
+                   && changes.get(last)[0] - changes.get(last - 1)[1]
+                      <= 2 * CONTEXT) {
+                last += 1;
+            }
+            int[] start = changes.get(first);
+            int[] end = changes.get(last - 1);
+            int alo = Math.max(0, start[0] - CONTEXT);
+            int blo = start[2] - (start[0] - alo);
+            int ahi = Math.min(ids[0].length, end[1] + CONTEXT);
+            int bhi = end[3] + (ahi - end[1]);
+            out.print("@@ -" + range(alo, ahi) + " +" + range(blo, bhi)
+                      + " @@\n");
+            int i = alo;
+            for (int c = first; c < last; c += 1) {
+                int[] change = changes.get(c);
+                lines(out, ' ', old, bounds[0], i, change[0]);
+                lines(out, '-', old, bounds[0], change[0], change[1]);
+                lines(out, '+', now, bounds[1], change[2], change[3]);
+                i = change[1];
+            }
+            lines(out, ' ', old, bounds[0], i, ahi);
+        }
+    }
+
+    /** Returns the changes described by MATCH, as returned by match for
+     *  texts of MATCH.length and N lines: in order, the ranges {I0, I1,
+     *  J0, J1} such that lines [I0, I1) of the first text were replaced
+     *  by lines [J0, J1) of the second.
+     *  @return list of ranges */
+    private static ArrayList<int[]> changes(int[] match, int n) {
+        ArrayList<int[]> result = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < match.length || j < n) {
+            if (i < match.length && match[i] == j) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int i0 = i;
+            while (i < match.length && match[i] < 0) {
+                i += 1;
+            }
+            int j1 = i < match.length ? match[i] : n;
+            result.add(new int[] {i0, i, j, j1});
+            j = j1;
+        }
+        return result;
+    }
+
+    /** Returns the unified-format range of lines [FROM, TO).
+     *  @return string */
+    private static String range(int from, int to) {
+        if (to - from == 1) {
+            return Integer.toString(to);
+        }
+        return (from == to ? from : from + 1) + "," + (to - from);
+    }
+
+    /** Prints lines [FROM, TO) of TEXT, split at BOUNDS, to OUT, each
+     *  preceded by PREFIX. */
+    private static void lines(PrintWriter out, char prefix, byte[] text,
+                              int[] bounds, int from, int to) {
+        for (int k = from; k < to; k += 1) {
+            int start = bounds[k];
+            int end = bounds[k + 1];
+            boolean newline = text[end - 1] == '\n';
+            out.print(prefix);
+            out.print(new String(text, start, end - start - (newline ? 1 : 0),
+                                 StandardCharsets.UTF_8));
+            out.print(newline ? "\n" : "\n\\ No newline at end of file\n");
+        }
+    }
+
+    /** Returns true iff TEXT looks binary: it has a NUL byte among its
+     *  first BINARY_PROBE bytes. */
+    private static boolean binary(byte[] text) {
+        for (int i = 0; i < Math.min(text.length, BINARY_PROBE); i += 1) {
+            if (text[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the point {X, Y} at which the middle snake of a shortest
+     *  edit script from A[ALO..AHI) to B[BLO..BHI) crosses the middle
+     *  diagonal band, or null if the ranges have no line in common.  V
+     *  and W are scratch arrays of the forward and reverse furthest
+     *  reaching points, large enough for any subrange.
+     *  @return the split point */
+    private static int[] middle(int[] a, int alo, int ahi, int[] b,
+                                int blo, int bhi, int[] v, int[] w) {
+        int n = ahi - alo;
+        int m = bhi - blo;
+        int maxd = (n + m + 1) / 2;
+        int off = maxd;
+        int len = 2 * maxd + 2;
+        Arrays.fill(v, 0, len, -1);
+        Arrays.fill(w, 0, len, -1);
+        v[off + 1] = 0;
+        w[off + 1] = 0;
+        int delta = n - m;
+        boolean front = (delta & 1) != 0;
+        int k1start = 0;
+        int k1end = 0;
+        int k2start = 0;
+        int k2end = 0;
+        for (int d = 0; d < maxd; d += 1) {
+            for (int k = -d + k1start; k <= d - k1end; k += 2) {
+                int i = off + k;
+                int x = k == -d || (k != d && v[i - 1] < v[i + 1])
+                    ? v[i + 1] : v[i - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[alo + x] == b[blo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                v[i] = x;
+                if (x > n) {
+                    k1end += 2;
+                } else if (y > m) {
+                    k1start += 2;
+                } else if (front) {
+                    int j = off + delta - k;
+                    if (j >= 0 && j < len && w[j] != -1 && x >= n - w[j]) {
+                        return new int[] {alo + x, blo + y};
+                    }
+                }
+            }
+            for (int k = -d + k2start; k <= d - k2end; k += 2) {
+                int j = off + k;
+                int x = k == -d || (k != d && w[j - 1] < w[j + 1])
+                    ? w[j + 1] : w[j - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m
+                       && a[ahi - x - 1] == b[bhi - y - 1]) {
+                    x += 1;
+                    y += 1;
+                }
+                w[j] = x;
+                if (x > n) {
+                    k2end += 2;
+                } else if (y > m) {
+                    k2start += 2;
+                } else if (!front) {
+                    int i = off + delta - k;
+                    if (i >= 0 && i < len && v[i] != -1 && v[i] >= n - x) {
+                        int fx = v[i];
+                        return new int[] {alo + fx, blo + fx - (i - off)};
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Returns the 32-bit FNV-1a hash of TEXT[FROM..TO). */
+    private static int hash(byte[] text, int from, int to) {
+        int h = FNV_OFFSET;
+        for (int i = from; i < to; i += 1) {
+            h = (h ^ (text[i] & 0xff)) * FNV_PRIME;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /** Lines of context around each change in unified output. */
+    private static final int CONTEXT = 3;
+
+    /** Bytes examined to decide whether a file is binary. */
+    private static final int BINARY_PROBE = 8000;
+
+    /** Name printed for a missing file. */
+    private static final String NULL = "/dev/null";
+
+    /** FNV-1a offset basis. */
+    private static final int FNV_OFFSET = 0x811c9dc5;
+
+    /** FNV-1a prime. */
+    private static final int FNV_PRIME = 0x01000193;
+
+}
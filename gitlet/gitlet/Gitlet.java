@@ -1,69 +1,264 @@
 package gitlet;
 
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.Serializable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 
 /** The "repo" class of Gitlet, the tiny stupid version-control system.
+ *  Its state is kept in small files under .gitlet: HEAD and one file per
+ *  branch (see Refs), and the binary stage file holding staged and
+ *  removed files.  Each is rewritten only if a command changed it.
  *  @author Santosh Tatipamula
  */
 
-public class Gitlet implements Serializable {
+public class Gitlet {
 
     /**
      * The "init" method of Gitlet, the tiny stupid version-control system.
      * Creates a new Gitlet version-control system in the current directory.
      */
     public Gitlet() {
-        Commit initial = new Commit("initial commit",
-                new HashMap<>(), true, null);
-        String hashid = initial.hash();
         File gitlet = new File(".gitlet");
         gitlet.mkdir();
         File staging = new File(".gitlet/staging");
         staging.mkdir();
         File commits = new File(".gitlet/commits");
         commits.mkdir();
-        File initialFile = new File(".gitlet/commits/" + hashid);
-        Utils.writeObject(initialFile, initial);
+        Commit initial = new Commit("initial commit",
+                Tree.write(objects(), new HashMap<>()), true, null);
+        String hashid = initial.hash();
+        objects().writecommit(initial);
+        node(hashid);
+        messages().update(graph());
         _branches = new HashMap<>();
         _untracked = new ArrayList<String>();
         _branches.put("master", initial.hash());
         _head = "master";
         _stage = new HashMap<>();
+        _refs = new Refs(gitlet);
+        _savedbranches = new HashMap<>();
+    }
+
+    /** The repository whose HEAD and branches are REFS, with the stage
+     *  read from .gitlet/stage. */
+    private Gitlet(Refs refs) {
+        _refs = refs;
+        _head = refs.head();
+        _savedhead = _head;
+        _branches = refs.branches();
+        _savedbranches = new HashMap<>(_branches);
+        _stage = new HashMap<>();
+        _untracked = new ArrayList<>();
+        File f = new File(STAGE_FILE);
+        if (f.isFile()) {
+            _savedstage = Utils.readContents(f);
+            _stageondisk = true;
+            decodestage(_savedstage);
+        } else {
+            _savedstage = encodestage();
+        }
+    }
+
+    /** The repository in REFS holding STATE, read from the state file of
+     *  the original Gitlet, none of which is written yet. */
+    private Gitlet(Refs refs, Legacy.State state) {
+        _refs = refs;
+        _head = state.head();
+        _branches = new HashMap<>(state.branches());
+        _savedbranches = new HashMap<>();
+        _stage = new HashMap<>(state.stage());
+        _untracked = new ArrayList<>(state.removed());
+    }
+
+    /** Returns true iff the repository in the current directory needs no
+     *  conversion from the format of an older Gitlet before it is read,
+     *  neither of its state file nor of the layout of its objects, so
+     *  that commands reading it need not change it.
+     *  @return boolean */
+    public static boolean upgraded() {
+        File root = new File(".gitlet");
+        return !new File(root, Legacy.STATE_FILE).exists()
+            && ObjectStore.migrated(root);
+    }
+
+    /** Returns true iff another process has changed HEAD, the branches or
+     *  the stage since this repository last read or wrote them, so that
+     *  it must be opened again before use.
+     *  @return boolean */
+    public boolean stale() {
+        File f = new File(STAGE_FILE);
+        byte[] stage = f.isFile() ? Utils.readContents(f) : null;
+        return !_refs.head().equals(_savedhead)
+            || !_refs.branches().equals(_savedbranches)
+            || !Arrays.equals(stage, _stageondisk ? _savedstage : null);
+    }
+
+    /** Returns true iff the commit graph and message index cover every
+     *  commit, so that commands that only read the repository have
+     *  nothing to add to them.  The graph may lack a branch head whose
+     *  record was lost when a command was killed.
+     *  @return boolean */
+    public boolean cachescurrent() {
+        if (!new CommitGraph(new File(GRAPH_DIR)).exists()
+                || messages().indexed() < graph().size()) {
+            return false;
+        }
+        for (String id : _branches.values()) {
+            if (graph().position(id) == CommitGraph.NONE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the Gitlet repository in the current directory.
+     * @return gitlet */
+    public static Gitlet open() {
+        File root = new File(".gitlet");
+        Journal.recover(root);
+        upgrade(root);
+        return new Gitlet(new Refs(root));
+    }
+
+    /** Converts the state file of a repository in ROOT written by the
+     *  original Gitlet, which kept HEAD, the branches and the stage in
+     *  the one serialized file .gitlet/gitlets, into their own files, and
+     *  removes it. */
+    private static void upgrade(File root) {
+        File old = new File(root, Legacy.STATE_FILE);
+        if (!old.isFile()) {
+            return;
+        }
+        if (!new File(root, "HEAD").isFile()) {
+            Legacy.State state = Legacy.readstate(Utils.readContents(old));
+            new Gitlet(new Refs(root), state).close();
+        }
+        old.delete();
     }
 
     /**
-     * The "add" method of Gitlet, the tiny stupid version-control system S.
-     * Stages file.
+     * The "add" method of Gitlet, the tiny stupid version-control system.
+     * Stages the files named by PATHS, each of which may be a file, a
+     * directory (standing for every file beneath it) or a glob pattern
+     * matched against paths relative to the working directory.
      */
-    public void add(String s) {
-        File f = new File(s);
-        if (!f.exists()) {
+    public void add(String... paths) {
+        TreeSet<String> names = expand(paths);
+        if (names == null) {
             System.out.println("File does not exist.");
             return;
         }
-        Blob toadd = new Blob(s);
-        String contenthash = Utils.sha1(toadd.getcontent());
         Commit c = idtocommit(_branches.get(_head));
-        File newFile = new File(".gitlet/staging/" + contenthash);
-        HashMap<String, String> currfiles = c.getmapping();
-        if (!currfiles.containsKey(s)
-                || !currfiles.get(s).equals(contenthash)) {
-            String content = Utils.readContentsAsString(toadd.getfile());
-            Utils.writeContents(newFile, content);
-            _stage.put(s, contenthash);
-        } else if (newFile.exists()) {
-            _stage.remove(s);
+        HashMap<String, String> currfiles = filemap(c);
+        ArrayList<String> list = new ArrayList<>(names);
+        String[] shas = hashfiles(list, currfiles, objects(), stats());
+        for (int i = 0; i < shas.length; i += 1) {
+            String s = list.get(i);
+            String contenthash = shas[i];
+            if (!currfiles.containsKey(s)
+                    || !currfiles.get(s).equals(contenthash)) {
+                _stage.put(s, contenthash);
+            } else {
+                _stage.remove(s);
+            }
         }
-        if (_untracked.contains(s)) {
-            _untracked.remove(s);
+        _untracked.removeAll(names);
+    }
+
+    /** Returns the blob ids of the working files NAMES, writing those not
+     *  yet in OBJECTS as blobs, delta-encoded where possible against the
+     *  blobs named in BASES.  Files are hashed and written in parallel on
+     *  the common fork-join pool; STATS lets unchanged files skip both.
+     *  @return shas */
+    static String[] hashfiles(List<String> names, Map<String, String> bases,
+                              ObjectStore objects, StatCache stats) {
+        String[] shas = new String[names.size()];
+        IntStream.range(0, shas.length).parallel().forEach(i -> {
+            String name = names.get(i);
+            File f = new File(name);
+            String sha = stats.lookup(f, name);
+            if (sha == null || !objects.hasblob(sha)) {
+                sha = objects.writefile(f, bases.get(name));
+                stats.record(f, name, sha);
+            }
+            shas[i] = sha;
+        });
+        return shas;
+    }
+
+    /** Returns the working files named by PATHS: files as given, every
+     *  file beneath a directory, and every file matching a glob pattern,
+     *  as paths relative to the working directory separated by "/".
+     *  Returns null if some element of PATHS names nothing.
+     *  @return names */
+    private TreeSet<String> expand(String[] paths) {
+        TreeSet<String> result = new TreeSet<>();
+        Path wd = Paths.get("").toAbsolutePath();
+        List<String> all = null;
+        for (String path : paths) {
+            File f = new File(path);
+            if (f.isFile()) {
+                result.add(relative(wd, f.toPath()));
+            } else if (f.isDirectory() || GLOB.matcher(path).find()) {
+                if (all == null) {
+                    all = new ArrayList<>(worktree().files());
+                }
+                PathMatcher m = f.isDirectory() ? null
+                    : FileSystems.getDefault().getPathMatcher("glob:" + path);
+                String dir = f.isDirectory() ? relative(wd, f.toPath()) : "";
+                boolean found = false;
+                for (String name : all) {
+                    if (m != null ? m.matches(Paths.get(name))
+                        : dir.isEmpty() || name.startsWith(dir + "/")) {
+                        result.add(name);
+                        found = true;
+                    }
+                }
+                if (!found) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
         }
+        return result;
+    }
+
+    /** Returns the path of P relative to WD, separated by "/".
+     *  @return name */
+    private static String relative(Path wd, Path p) {
+        String name = wd.relativize(p.toAbsolutePath().normalize())
+            .toString();
+        return name.replace(File.separatorChar, '/');
     }
 
     /**
@@ -80,19 +275,11 @@ public class Gitlet implements Serializable {
         }
         Commit current = idtocommit(_branches.get(_head));
         String par = current.hash();
-        HashMap<String, String> curr = current.getmapping();
-        for (String fileName : _stage.keySet()) {
-            curr.put(fileName, _stage.get(fileName));
-        }
-        if (_untracked.size() > 0) {
-            for (String file : _untracked) {
-                curr.remove(file);
-            }
-        }
         String[] parent = {par};
-        Commit newCommit = new Commit(s, curr, false, parent);
-        File newFile = new File(".gitlet/commits/" + newCommit.hash());
-        Utils.writeObject(newFile, newCommit);
+        Commit newCommit = new Commit(s, stagedtree(current), false, parent);
+        objects().writecommit(newCommit);
+        graph().add(newCommit);
+        messages().update(graph());
         _untracked.clear();
         _stage.clear();
         _branches.put(_head, newCommit.hash());
@@ -109,19 +296,12 @@ public class Gitlet implements Serializable {
         } else {
             Commit current = idtocommit(_branches.get(_head));
             String par = current.hash();
-            HashMap<String, String> curr = current.getmapping();
-            for (String fileName : _stage.keySet()) {
-                curr.put(fileName, _stage.get(fileName));
-            }
-            if (_untracked.size() > 0) {
-                for (String file : _untracked) {
-                    curr.remove(file);
-                }
-            }
             String[] parent = {_branches.get(_head), _branches.get(merged)};
-            Commit newCommit = new Commit(s, curr, false, parent);
-            File newFile = new File(".gitlet/commits/" + newCommit.hash());
-            Utils.writeObject(newFile, newCommit);
+            Commit newCommit = new Commit(s, stagedtree(current), false,
+                                          parent);
+            objects().writecommit(newCommit);
+            graph().add(newCommit);
+            messages().update(graph());
             _untracked.clear();
             _stage.clear();
             _branches.put(_head, newCommit.hash());
@@ -130,27 +310,91 @@ public class Gitlet implements Serializable {
 
     /**
      * The "log" method of Gitlet, the tiny stupid version-control system.
-     * Prints the log of commit's branch.
+     * Prints the log of commit's branch, following first parents from its
+     * head.  OPTIONS may limit it to the first N commits ("-n N") or to
+     * commits made since a date ("--since DATE"); the walk stops as soon
+     * as either limit is reached.
      */
-    public void log() {
-        Commit curr = idtocommit(_branches.get(_head));
-        while (curr != null && curr.getparents() != null) {
-            logcommit(curr);
-            String parent = curr.getparents()[0];
-            curr = idtocommit(parent);
+    public void log(String... options) {
+        long[] limits = loglimits(options);
+        if (limits == null) {
+            return;
+        }
+        CommitGraph g = graph();
+        PrintWriter out = output();
+        long n = 0;
+        for (int k = node(_branches.get(_head));
+             k != CommitGraph.NONE && n < limits[0]
+                 && g.time(k) >= limits[1];
+             k = g.parent(k), n += 1) {
+            logentry(out, g, k);
         }
-        logcommit(curr);
+        out.flush();
     }
 
-    /**
-     * Helper for log COM.
-     */
-    public void logcommit(Commit com) {
-        System.out.println("===");
-        System.out.println("commit " + com.hash());
-        System.out.println("Date: " + com.gettimestamp());
-        System.out.println(com.getmessage());
-        System.out.println();
+    /** Prints the log entry of commit K of graph G to OUT. */
+    private static void logentry(PrintWriter out, CommitGraph g, int k) {
+        out.print("===\ncommit ");
+        out.print(g.id(k));
+        out.print("\nDate: ");
+        out.print(g.date(k));
+        out.print("\n");
+        out.print(g.message(k));
+        out.print("\n\n");
+    }
+
+    /** Returns the limits given by the log OPTIONS: the largest number of
+     *  commits to print and the earliest commit time to print, in
+     *  milliseconds.  Prints a message and returns null if OPTIONS are
+     *  malformed.
+     *  @return limits */
+    private static long[] loglimits(String[] options) {
+        long[] limits = {Long.MAX_VALUE, Long.MIN_VALUE};
+        try {
+            for (int i = 0; i < options.length; i += 1) {
+                String opt = options[i];
+                if (opt.equals("-n") && i + 1 < options.length) {
+                    i += 1;
+                    limits[0] = Long.parseLong(options[i]);
+                } else if (opt.equals("--since") && i + 1 < options.length) {
+                    i += 1;
+                    limits[1] = parsedate(options[i]);
+                } else {
+                    System.out.println("Incorrect operands.");
+                    return null;
+                }
+            }
+        } catch (NumberFormatException | ParseException excp) {
+            System.out.println("Incorrect operands.");
+            return null;
+        }
+        return limits;
+    }
+
+    /** Returns the time denoted by DATE, written as yyyy-MM-dd optionally
+     *  followed by HH:mm[:ss], in milliseconds since the epoch.
+     *  @return time */
+    private static long parsedate(String date) throws ParseException {
+        String[] formats = {"yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd HH:mm",
+            "yyyy-MM-dd"};
+        for (String format : formats) {
+            SimpleDateFormat f = new SimpleDateFormat(format);
+            f.setLenient(false);
+            ParsePosition pos = new ParsePosition(0);
+            Date d = f.parse(date, pos);
+            if (d != null && pos.getIndex() == date.length()) {
+                return d.getTime();
+            }
+        }
+        throw new ParseException(date, 0);
+    }
+
+    /** Returns a writer that buffers large amounts of standard output.
+     *  @return writer */
+    private static PrintWriter output() {
+        return new PrintWriter(new BufferedWriter(
+            new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+            OUTPUT_BUFFER));
     }
 
     /**
@@ -164,16 +408,9 @@ public class Gitlet implements Serializable {
             name = arguments[1];
             curr = idtocommit(_branches.get(_head));
         } else if (arguments[1].equals("--") && arguments.length == 3) {
-            boolean b = false;
             String id = shortidtolong(arguments[0]);
-            File commits = new File(".gitlet/commits/");
-            for (File f : commits.listFiles()) {
-                if (shortidtolong(arguments[0]).equals(f.getName())) {
-                    b = true;
-                }
-            }
-            if (b) {
-                curr = idtocommit(shortidtolong(arguments[0]));
+            if (objects().hascommit(id)) {
+                curr = idtocommit(id);
                 name = arguments[2];
             } else {
                 System.out.println("No commit with that id exists.");
@@ -189,12 +426,9 @@ public class Gitlet implements Serializable {
             System.out.println("File does not exist in that commit.");
         } else {
             assert curr != null;
-            HashMap<String, String> currfiles = curr.getmapping();
+            HashMap<String, String> currfiles = filemap(curr);
             if (currfiles.containsKey(name)) {
-                File old = new File(".gitlet/staging/" + currfiles.get(name));
-                File newfile = new File(name);
-                Utils.writeContents(newfile,
-                        Utils.readContentsAsString(old));
+                restore(name, currfiles.get(name));
             }
         }
     }
@@ -218,25 +452,7 @@ public class Gitlet implements Serializable {
             }
             Commit checkedout = idtocommit(_branches.get(str));
             assert checkedout != null;
-            HashMap<String, String> checkedoutfiles = checkedout.getmapping();
-            String wd = System.getProperty("user.dir");
-            File wdfiles = new File(wd);
-            for (File f : wdfiles.listFiles()) {
-                String name = f.getName();
-                if (!name.equals(".gitlet")) {
-                    if (!checkedoutfiles.containsKey(f.getName())) {
-                        Utils.restrictedDelete(f);
-                    }
-                }
-            }
-            if (checkedoutfiles != null) {
-                for (Object s : checkedoutfiles.keySet()) {
-                    File oldfile = new File(".gitlet/staging/"
-                            + checkedoutfiles.get(s.toString()));
-                    Utils.writeContents(new File(s.toString()),
-                            Utils.readContentsAsString(oldfile));
-                }
-            }
+            switchto(idtocommit(_branches.get(_head)), checkedout);
             _head = str;
             _stage.clear();
         }
@@ -245,7 +461,7 @@ public class Gitlet implements Serializable {
     /**Remove method STR. */
     public void rm(String str) {
         Commit c = idtocommit(_branches.get(_head));
-        HashMap<String, String> current = c.getmapping();
+        HashMap<String, String> current = filemap(c);
         if (!_stage.containsKey(str) && !current.containsKey(str)) {
             System.out.println("No reason to remove the file.");
             return;
@@ -255,7 +471,10 @@ public class Gitlet implements Serializable {
         } else if (current.containsKey(str)) {
             _untracked.add(str);
             File del = new File(str);
-            Utils.restrictedDelete(del);
+            if (del.isFile()) {
+                del.delete();
+                WorkTree.prune(List.of(str));
+            }
         } else {
             throw new GitletException("No reason to remove the file.");
         }
@@ -300,17 +519,10 @@ public class Gitlet implements Serializable {
     /** helper for status.*/
     public void untrackedprint() {
         Commit c = idtocommit(_branches.get(_head));
-        HashMap<String, String> files = c.getmapping();
-        Set keys = files.keySet();
-        String wd = System.getProperty("user.dir");
-        File wdfiles = new File(wd);
-        for (File f : wdfiles.listFiles()) {
-            String name = f.getName();
-            if (!name.equals(".gitlet")) {
-                if (!keys.contains(f.getName())
-                    && !_stage.containsKey(f.getName())) {
-                    System.out.println(f.getName());
-                }
+        HashMap<String, String> files = filemap(c);
+        for (String name : worktree().files()) {
+            if (!files.containsKey(name) && !_stage.containsKey(name)) {
+                System.out.println(name);
             }
         }
     }
@@ -318,36 +530,22 @@ public class Gitlet implements Serializable {
     /** helper for status2.*/
     public void modificationprint() {
         Commit c = idtocommit(_branches.get(_head));
-        HashMap<String, String> files = c.getmapping();
-        Set keys = files.keySet();
-        String wd = System.getProperty("user.dir");
-        File wdfiles = new File(wd);
-        for (File f : wdfiles.listFiles()) {
-            if (!f.getName().equals(".gitlet")) {
-                if (keys.contains(f.getName())) {
-                    File old = new File(".gitlet/staging/"
-                            + files.get(f.getName()));
-                    String currcont = Utils.readContentsAsString(f);
-                    String oldcont = Utils.readContentsAsString(old);
-                    String sha = Utils.sha1(currcont);
-                    if (!oldcont.equals(currcont)) {
-                        if (_cf != null
-                                && _cf.contains(
-                                 Utils.sha1(Utils.readContentsAsString(f)))) {
-                            break;
-                        } else {
-                            System.out.println(f.getName() + " (modified)");
-                        }
+        HashMap<String, String> files = filemap(c);
+        TreeSet<String> present = worktree().files();
+        for (String name : present) {
+            if (files.containsKey(name)) {
+                String sha = stats().hash(new File(name), name);
+                if (!sha.equals(files.get(name))) {
+                    if (_cf != null && _cf.contains(sha)) {
+                        break;
+                    } else {
+                        System.out.println(name + " (modified)");
                     }
                 }
             }
         }
-        ArrayList<String> names = new ArrayList<>();
-        for (File f: wdfiles.listFiles()) {
-            names.add(f.getName());
-        }
-        for (Object s: files.keySet()) {
-            if (!names.contains(s) && !_untracked.contains(s)) {
+        for (String s : new TreeSet<>(files.keySet())) {
+            if (!present.contains(s) && !_untracked.contains(s)) {
                 System.out.println(s + " (deleted)");
             }
 
@@ -360,6 +558,12 @@ public class Gitlet implements Serializable {
     public void branch(String str) {
         if (_branches.containsKey(str)) {
             System.out.println("A branch with that name already exists.");
+        } else if (!Refs.valid(str)) {
+            System.out.println("Invalid branch name.");
+        } else if (Refs.clashes(str, _branches.keySet())
+                   || new File(REMOTES_DIR, str).exists()) {
+            System.out.println("That name conflicts with an existing "
+                               + "branch or remote.");
         } else {
             _branches.put(str, _branches.get(_head));
         }
@@ -382,37 +586,54 @@ public class Gitlet implements Serializable {
     /**
      * The find method. Prints out the ids of all commits
      * that have the given commit message, one per line STR.
+     * Only the message index is searched, not the commits.
      **/
     public void find(String str) {
-        File commits = new File(".gitlet/commits");
-        File[] allcommits = commits.listFiles();
-        boolean exists = false;
-        assert allcommits != null;
-        for (File f : allcommits) {
-            if (idtocommit(f.getName()).getmessage().equals(str)) {
-                System.out.println(f.getName());
-                exists = true;
-            }
-        }
-        if (!exists) {
+        messages().update(graph());
+        findprint(messages().exact(graph(), str));
+    }
+
+    /**
+     * Prints out the ids of all commits whose message contains STR,
+     * one per line.
+     **/
+    public void findgrep(String str) {
+        messages().update(graph());
+        findprint(messages().containing(graph(), str));
+    }
+
+    /** Prints the ids of the commits at positions FOUND in the commit
+     *  graph, or a message saying there are none. */
+    private void findprint(List<Integer> found) {
+        if (found.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
+        CommitGraph g = graph();
+        for (int k : found) {
+            System.out.println(g.id(k));
+        }
     }
 
     /**
-     * The global log method. Prints out all the commits.
+     * The global log method. Prints out all the commits, newest first,
+     * from the commit graph, limited by OPTIONS as for log.
      **/
-    public void globallog() {
-        File commits = new File(".gitlet/commits");
-        File[] allcommits = commits.listFiles();
-        for (File f : allcommits) {
-            Commit c = idtocommit(f.getName());
-            System.out.println("===");
-            System.out.println("commit " + c.hash());
-            System.out.println("Date: " + c.gettimestamp());
-            System.out.println(c.getmessage());
-            System.out.println();
+    public void globallog(String... options) {
+        long[] limits = loglimits(options);
+        if (limits == null) {
+            return;
         }
+        CommitGraph g = graph();
+        PrintWriter out = output();
+        long n = 0;
+        for (int k : g.newestfirst()) {
+            if (n >= limits[0] || g.time(k) < limits[1]) {
+                break;
+            }
+            logentry(out, g, k);
+            n += 1;
+        }
+        out.flush();
     }
 
     /**
@@ -425,14 +646,7 @@ public class Gitlet implements Serializable {
         } else {
             id = str;
         }
-        File commits = new File(".gitlet/commits");
-        boolean n = false;
-        for (File f : commits.listFiles()) {
-            if (id.equals(f.getName())) {
-                n = true;
-            }
-        }
-        if (!n) {
+        if (!objects().hascommit(id)) {
             System.out.println("No commit with that id exists.");
             return;
         }
@@ -442,26 +656,7 @@ public class Gitlet implements Serializable {
         }
         Commit reset = idtocommit(id);
         assert reset != null;
-        HashMap<String, String> resetfiles = reset.getmapping();
-        String wd = System.getProperty("user.dir");
-        File wdfiles = new File(wd);
-        for (File f : wdfiles.listFiles()) {
-            String name = f.getName();
-            if (!name.equals(".gitlet")) {
-                if (!resetfiles.containsKey(f.getName())) {
-                    Utils.restrictedDelete(f);
-                }
-            }
-        }
-        if (resetfiles != null) {
-            for (Object s : resetfiles.keySet()) {
-                File oldfile = new File(".gitlet/staging/"
-                        + resetfiles.get(s.toString()));
-                File newfile = new File(s.toString());
-                Utils.writeContents(newfile,
-                        Utils.readContentsAsString(oldfile));
-            }
-        }
+        switchto(idtocommit(_branches.get(_head)), reset);
         _branches.put(_head, reset.hash());
         _stage.clear();
     }
@@ -488,19 +683,12 @@ public class Gitlet implements Serializable {
         }
         String split = splitpoint(str);
         Commit splitpoint = idtocommit(split);
-        if (idtocommit(_branches.get(str)).getparents()[0]
-                .equals(_branches.get(_head))) {
+        if (!_branches.get(str).equals(_branches.get(_head))
+                && graph().isancestor(node(_branches.get(_head)),
+                                      node(_branches.get(str)))) {
             System.out.println("Current branch fast-forwarded.");
-            String wd = System.getProperty("user.dir");
-            File wdfiles = new File(wd);
-            Commit current = idtocommit(_branches.get(str));
-            Set s = current.getmapping().keySet();
-            for (File f: wdfiles.listFiles()) {
-                if (!s.contains(f.getName())) {
-                    File del = new File(f.getName());
-                    Utils.restrictedDelete(del);
-                }
-            }
+            switchto(idtocommit(_branches.get(_head)),
+                     idtocommit(_branches.get(str)));
             _branches.put(_head, _branches.get(str));
             return;
         }
@@ -509,16 +697,37 @@ public class Gitlet implements Serializable {
                     + "an ancestor of the current branch.");
             return;
         }
-        HashMap<String, String> splitfiles = splitpoint.getmapping();
         Commit head = idtocommit(_branches.get(_head));
-        HashMap<String, String> headfiles = head.getmapping();
         Commit merged = idtocommit(_branches.get(str));
-        HashMap<String, String> mergedfiles = merged.getmapping();
-        boolean a = mergehelp1(splitfiles, headfiles, mergedfiles);
-        boolean b = mergehelp2(splitfiles, headfiles, mergedfiles);
-        boolean c = mergehelp3(splitfiles, headfiles, mergedfiles);
-        conflict = mergehelp4(splitfiles, headfiles, mergedfiles);
-        if (a || b || c) {
+        MergePlan plan = new MergePlan(objects(), splitpoint.gettree(),
+                                       head.gettree(), merged.gettree());
+        plan.resolve();
+        Materializer work = materializer();
+        for (int k = 0; k < plan.size(); k += 1) {
+            String f = plan.path(k);
+            int action = plan.action(k);
+            if (action == MergePlan.TAKE) {
+                work.write(f, plan.theirs(k));
+                _stage.put(f, plan.theirs(k));
+                modified = true;
+            } else if (action == MergePlan.REMOVE) {
+                _untracked.add(f);
+                work.delete(f);
+                modified = true;
+            } else {
+                work.write(f, plan.result(k));
+                _stage.put(f, plan.result(k));
+                if (plan.conflicted(k)) {
+                    _cf.add(plan.result(k));
+                    conflict = true;
+                } else {
+                    modified = true;
+                }
+            }
+        }
+        work.run();
+        _worktree = null;
+        if (modified) {
             mergecommit("Merged " + str + " into " + _head + ".", str);
         }
         if (conflict) {
@@ -526,218 +735,472 @@ public class Gitlet implements Serializable {
         }
     }
 
-    /** Merge helper SPLITFILES HEADFILES MERGEDFILES.
-     * @param splitfiles
-     * @param headfiles
-     * @param mergedfiles
-     * @return boolean
-     */
-    public boolean mergehelp1(HashMap<String, String> splitfiles,
-                              HashMap<String, String> headfiles,
-                              HashMap<String, String> mergedfiles) {
-        boolean modified = false;
-        for (String s : splitfiles.keySet()) {
-            if (mergedfiles.containsKey(s) && headfiles.containsKey(s)) {
-                String file = splitfiles.get(s);
-                if (!mergedfiles.get(s).equals(file)
-                        && headfiles.get(s).equals(file)) {
-                    File oldfile = new File(".gitlet/staging/"
-                            + mergedfiles.get(s));
-                    Utils.writeContents(new File(s),
-                            Utils.readContentsAsString(oldfile));
-                    _stage.put(s,
-                            Utils.sha1(Utils.readContentsAsString(oldfile)));
-                    modified = true;
-                }
+    /** finds splitpoints BRANCH: the latest common ancestor of the
+     * current branch and BRANCH, following both parents of merges.
+     * @return string */
+    public String splitpoint(String branch) {
+        CommitGraph g = graph();
+        return g.id(g.mergebase(node(_branches.get(_head)),
+                                node(_branches.get(branch))));
+    }
+
+
+    /** Checks if there are untracked files in the working directory.
+     * @return boolean */
+    public boolean untracked() {
+        Commit current = idtocommit(_branches.get(_head));
+        Set s = filemap(current).keySet();
+        for (String name : worktree().files()) {
+            if (!_stage.containsKey(name) && !s.contains(name)) {
+                System.out.println("There is an untracked file in "
+                        + "the way; delete it or add it first.");
+                return true;
             }
         }
-        return modified;
+        return false;
     }
 
-    /** Merge helper2 SPLITFILES HEADFILES MERGEDFILES.
-     * @param splitfiles
-     * @param headfiles
-     * @param mergedfiles
-     * @return boolean
-     */
-    public boolean mergehelp2(HashMap<String, String> splitfiles,
-                              HashMap<String, String> headfiles,
-                              HashMap<String, String> mergedfiles) {
-        boolean modified = false;
-        for (String s : mergedfiles.keySet()) {
-            if (!splitfiles.containsKey(s) && !headfiles.containsKey(s)) {
-                File old = new File(".gitlet/staging/" + mergedfiles.get(s));
-                Utils.writeContents(new File(s),
-                        Utils.readContentsAsString(old));
-                _stage.put(s,
-                        Utils.sha1(Utils.readContentsAsString(old)));
-                modified = true;
-            }
+
+    /** Converts hashID to commit ID.
+     * @return commit*/
+    public Commit idtocommit(String id) {
+        return objects().readcommit(id);
+    }
+
+    /** Returns full version of shortened commit ID STR, or null if no
+     * commit id starts with STR.  Throws a GitletException if more than
+     * one does.
+     * @return string*/
+    public String shortidtolong(String str) {
+        if (str.length() == MAX_SIZE) {
+            return str;
+        }
+        List<String> ids = objects().commitswithprefix(str, 2);
+        if (ids.size() > 1) {
+            throw Utils.error("Ambiguous commit id.");
         }
-        return modified;
+        return ids.isEmpty() ? null : ids.get(0);
     }
 
-    /** Merge helper3 SPLITFILES HEADFILES MERGEDFILES.
-     * @param splitfiles
-     * @param headfiles
-     * @param mergedfiles
-     * @return boolean
-     */
-    public boolean mergehelp3(HashMap<String, String> splitfiles,
-                              HashMap<String, String> headfiles,
-                              HashMap<String, String> mergedfiles) {
-        boolean modified = false;
-        for (String s : splitfiles.keySet()) {
-            if (headfiles.containsKey(s)) {
-                if (headfiles.get(s).equals(splitfiles.get(s))) {
-                    if (!mergedfiles.containsKey(s)) {
-                        _untracked.add(s);
-                        File del = new File(s);
-                        Utils.restrictedDelete(del);
-                        modified = true;
-                    }
-                }
+    /** Writes back the parts of the repository state and caches that
+     *  the last command changed.  The objects the command wrote are
+     *  forced to disk together first; then the changed references and
+     *  stage are written through one journal, so that a crash leaves
+     *  either all of them or none of them changed, and never refers to
+     *  an object that was lost.  Each is written only if it still holds
+     *  what this repository read; if another process changed one, a
+     *  GitletException is thrown and none are written. */
+    public void close() {
+        Journal journal = new Journal(new File(".gitlet"));
+        if (!_head.equals(_savedhead)) {
+            _refs.sethead(journal, _savedhead, _head);
+        }
+        for (String branch : _branches.keySet()) {
+            String id = _branches.get(branch);
+            String old = _savedbranches.get(branch);
+            if (!id.equals(old)) {
+                _refs.set(journal, branch, old, id);
+            }
+        }
+        for (String branch : _savedbranches.keySet()) {
+            if (!_branches.containsKey(branch)) {
+                _refs.delete(journal, branch, _savedbranches.get(branch));
             }
         }
-        return modified;
+        byte[] stage = encodestage();
+        if (!Arrays.equals(stage, _savedstage)) {
+            String name = new File(STAGE_FILE).getName();
+            journal.expect(name, _stageondisk ? _savedstage : null);
+            journal.put(name, stage);
+        }
+        if (_objects != null) {
+            _objects.sync();
+        }
+        if (_graph != null) {
+            _graph.sync();
+        }
+        journal.commit();
+        _savedhead = _head;
+        _savedbranches = new HashMap<>(_branches);
+        if (!Arrays.equals(stage, _savedstage)) {
+            _savedstage = stage;
+            _stageondisk = true;
+        }
+        _worktree = null;
+        if (_stats != null) {
+            _stats.save();
+        }
     }
 
-    /** Merge helper4 SPLITFILES HEADFILES MERGEDFILES.
-     * @param splitfiles
-     * @param headfiles
-     * @param mergedfiles
-     * @return boolean
-     */
-    public boolean mergehelp4(HashMap<String, String> splitfiles,
-                              HashMap<String, String> headfiles,
-                              HashMap<String, String> mergedfiles) {
-        boolean conflict = false;
-        for (String f : headfiles.keySet()) {
-            if (mergeconflict(f, splitfiles, headfiles, mergedfiles)) {
-                File towrite = new File(f);
-                File mergefile = new File(".gitlet/staging/"
-                        + mergedfiles.get(f));
-                if (mergefile.exists()) {
-                    Utils.writeContents(towrite, "<<<<<<< HEAD\n",
-                            Utils.readContentsAsString(
-                                    new File(".gitlet/staging/"
-                                            + headfiles.get(f))), "=======\n",
-                            Utils.readContentsAsString(
-                                    new File(".gitlet/staging/"
-                                            + mergedfiles.get(f))),
-                            ">>>>>>>\n");
-                    conflict = true;
-                } else {
-                    Utils.writeContents(towrite, "<<<<<<< HEAD\n",
-                            Utils.readContentsAsString(new File(
-                                    ".gitlet/staging/"
-                                            + headfiles.get(f))), "=======\n",
-                            ">>>>>>>\n");
-                    conflict = true;
+    /** Returns the staged and removed files in their compact binary
+     *  form: a version byte, then the count of staged files and each
+     *  one's name and raw blob id, then the count of removed files and
+     *  their names, all in sorted order.
+     *  @return bytes */
+    private byte[] encodestage() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(STAGE_VERSION);
+            TreeMap<String, String> staged = new TreeMap<>(_stage);
+            Codec.writevarint(out, staged.size());
+            for (String name : staged.keySet()) {
+                Codec.writestring(out, name);
+                Codec.writeid(out, staged.get(name));
+            }
+            TreeSet<String> removed = new TreeSet<>(_untracked);
+            Codec.writevarint(out, removed.size());
+            for (String name : removed) {
+                Codec.writestring(out, name);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
 
-                }
-                _stage.put(f, Utils.sha1(Utils.readContentsAsString(towrite)));
-                _cf.add(Utils.sha1(Utils.readContentsAsString(towrite)));
-                File old = new File(".gitlet/staging/"
-                        + Utils.sha1(Utils.readContentsAsString(towrite)));
-                Utils.writeContents(old, Utils.readContentsAsString(towrite));
+    /** Fills the stage from DATA, written by encodestage. */
+    private void decodestage(byte[] data) {
+        try (DataInputStream in = new DataInputStream(
+                 new ByteArrayInputStream(data))) {
+            if (in.readByte() != STAGE_VERSION) {
+                throw Utils.error("Unknown stage format.");
+            }
+            for (int n = Codec.readvarint(in); n > 0; n -= 1) {
+                String name = Codec.readstring(in);
+                _stage.put(name, Codec.readid(in));
             }
+            for (int n = Codec.readvarint(in); n > 0; n -= 1) {
+                _untracked.add(Codec.readstring(in));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
-        return conflict;
     }
 
-    /** finds mergeconflict. FILE SPLIT HEAD MERGE.
-     * @return boolean */
-    public boolean mergeconflict(String file, HashMap<String,
-            String> split, HashMap<String, String> head,
-                                 HashMap<String, String> merge) {
-        if ((!split.containsKey(file) && head.containsKey(file)
-                && merge.containsKey(file)
-                && !merge.get(file).equals(head.get(file)))) {
-            return true;
-        }
-        if (split.containsKey(file) && head.containsKey(file)
-                && !head.get(file).equals(split.get(file))
-                && !merge.containsKey(file)) {
-            return true;
-        }
-        if ((split.containsKey(file) && head.containsKey(file)
-                && merge.containsKey(file)
-                && !merge.get(file).equals(head.get(file)))
-                && !merge.get(file).equals(split.get(file))
-                && !head.get(file).equals(split.get(file))) {
-            return true;
+    /** Returns a map from the name of each file tracked by commit C to
+     *  its blob id.
+     *  @return hashmap */
+    private HashMap<String, String> filemap(Commit c) {
+        return Tree.flatten(objects(), c.gettree());
+    }
+
+    /** Returns the id of the tree of commit C with the staged and removed
+     *  files applied, writing only the trees that change.
+     *  @return string */
+    private String stagedtree(Commit c) {
+        HashMap<String, String> changes = new HashMap<>(_stage);
+        for (String file : _untracked) {
+            changes.put(file, null);
         }
-        return false;
+        return Tree.update(objects(), c.gettree(), changes);
     }
 
+    /** Writes the contents of blob SHA to the working file NAME. */
+    private void restore(String name, String sha) {
+        File f = new File(name);
+        if (f.getParentFile() != null) {
+            f.getParentFile().mkdirs();
+        }
+        objects().copyblob(sha, f);
+        stats().record(f, name, sha);
+    }
 
-    /** finds splitpoints BRANCH.
-     * @return string */
-    public String splitpoint(String branch) {
-        String par1 = null;
-        String par2 = null;
-        par1 = _branches.get(_head);
-        par2 = _branches.get(branch);
-        while (!par1.equals(par2)) {
-            if (idtocommit(par1).getparents() != null) {
-                par1 = idtocommit(par1).getparents()[0];
-            }
-            if (idtocommit(par2).getparents() != null) {
-                par2 = idtocommit(par2).getparents()[0];
-            } else {
-                break;
+    /** Makes the working directory match commit TO, given that it was
+     *  last checked out at commit FROM.  Paths whose blobs differ between
+     *  the two trees are rewritten or deleted; other tracked paths are
+     *  rewritten only if the working file no longer holds its blob, which
+     *  the stat cache usually answers without reading the file.  Working
+     *  files not tracked by TO are deleted. */
+    private void switchto(Commit from, Commit to) {
+        HashMap<String, String> target = filemap(to);
+        TreeMap<String, String[]> changed =
+            Tree.diff(objects(), from.gettree(), to.gettree());
+        Materializer work = materializer();
+        for (String name : worktree().files()) {
+            if (!target.containsKey(name)) {
+                work.delete(name);
+            }
+        }
+        for (String name : target.keySet()) {
+            String sha = target.get(name);
+            File f = new File(name);
+            if (changed.containsKey(name) || !f.isFile()
+                    || !sha.equals(stats().hash(f, name))) {
+                work.write(name, sha);
             }
         }
-        return par1;
+        work.run();
+        _worktree = null;
     }
 
+    /** Returns a new materializer for the working directory.
+     *  @return materializer */
+    private Materializer materializer() {
+        return new Materializer(objects(), stats());
+    }
 
-    /** Checks if there are untracked files in the working directory.
-     * @return boolean */
-    public boolean untracked() {
-        String wd = System.getProperty("user.dir");
-        File wdfiles = new File(wd);
-        Commit current = idtocommit(_branches.get(_head));
-        Set s = current.getmapping().keySet();
-        for (File f: wdfiles.listFiles()) {
-            if (!f.getName().equals(".gitlet")) {
-                if (!_stage.containsKey(f.getName())
-                        && !s.contains(f.getName())) {
-                    System.out.println("There is an untracked file in "
-                            + "the way; delete it or add it first.");
-                    return true;
+    /** Returns the files of the working directory, walking it if that
+     *  has not been done since the last command or working-tree change.
+     *  @return working tree */
+    private WorkTree worktree() {
+        if (_worktree == null) {
+            _worktree = new WorkTree(Paths.get("").toAbsolutePath());
+        }
+        return _worktree;
+    }
+
+    /** Returns the stat cache of the working directory, reading it if
+     *  needed.
+     *  @return index */
+    private StatCache stats() {
+        if (_stats == null) {
+            _stats = new StatCache(new File(".gitlet/index"));
+        }
+        return _stats;
+    }
+
+    /** Prints, in unified format, the differences between the commits
+     *  named by the prefixes in IDS: the working directory against the
+     *  head commit if there are none, against the named commit if there is
+     *  one, and the first named commit against the second if there are
+     *  two.  Between commits, only files whose blob ids differ are read;
+     *  against the working directory, files the stat cache vouches for as
+     *  unchanged are not read either. */
+    public void diff(String... ids) {
+        if (ids.length > 2) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        Commit[] commits = new Commit[ids.length];
+        for (int i = 0; i < ids.length; i += 1) {
+            String id = shortidtolong(ids[i]);
+            if (id == null || !objects().hascommit(id)) {
+                System.out.println("No commit with that id exists.");
+                return;
+            }
+            commits[i] = idtocommit(id);
+        }
+        PrintWriter out = output();
+        if (commits.length == 2) {
+            for (Map.Entry<String, String[]> e : Tree.diff(objects(),
+                     commits[0].gettree(), commits[1].gettree()).entrySet()) {
+                String[] blobs = e.getValue();
+                Diff.unified(out, e.getKey(), readblob(blobs[0]),
+                             readblob(blobs[1]));
+            }
+        } else {
+            Commit c = commits.length == 1 ? commits[0]
+                : idtocommit(_branches.get(_head));
+            TreeMap<String, String> files = new TreeMap<>(filemap(c));
+            for (String name : _stage.keySet()) {
+                files.putIfAbsent(name, null);
+            }
+            for (Map.Entry<String, String> e : files.entrySet()) {
+                File f = new File(e.getKey());
+                String sha = e.getValue();
+                if (!f.isFile()) {
+                    if (sha != null) {
+                        Diff.unified(out, e.getKey(), readblob(sha), null);
+                    }
+                } else if (!stats().hash(f, e.getKey()).equals(sha)) {
+                    Diff.unified(out, e.getKey(), readblob(sha),
+                                 Utils.readContents(f));
                 }
             }
         }
-        return false;
+        out.flush();
     }
 
+    /** Returns the contents of blob SHA, or null if SHA is null.
+     *  @return bytes */
+    private byte[] readblob(String sha) {
+        return sha == null ? null : objects().readblob(sha);
+    }
 
-    /** Converts hashID to commit ID.
-     * @return commit*/
-    public Commit idtocommit(String id) {
-        File f = new File(".gitlet/commits/" + id);
+    /** Records the repository whose .gitlet directory is at PATH, with
+     *  "/" separating directories, as the remote NAME. */
+    public void addremote(String name, String path) {
+        File f = new File(REMOTES_DIR, name);
         if (f.exists()) {
-            return Utils.readObject(f, Commit.class);
+            System.out.println("A remote with that name already exists.");
+            return;
+        } else if (!Refs.valid(name) || name.contains("/")) {
+            System.out.println("Invalid remote name.");
+            return;
+        } else if (_branches.containsKey(name)) {
+            System.out.println("That name conflicts with an existing "
+                               + "branch or remote.");
+            return;
         }
-        return null;
+        f.getParentFile().mkdirs();
+        Utils.writeContents(f, path.replace("/", File.separator));
     }
 
-    /** Returns full version of shortened commit ID STR.
-     * @return string*/
-    public String shortidtolong(String str) {
-        if (str.length() == MAX_SIZE) {
-            return str;
-        } else {
-            File commits = new File(".gitlet/commits");
-            for (File f : commits.listFiles()) {
-                if (str.equals(f.getName().substring(0, str.length()))) {
-                    return f.getName();
-                }
+    /** Forgets the remote NAME. */
+    public void rmremote(String name) {
+        if (!Refs.valid(name) || name.contains("/")
+                || !new File(REMOTES_DIR, name).delete()) {
+            System.out.println("A remote with that name does not exist.");
+        }
+    }
+
+    /** Copies the commits of BRANCH in the remote NAME that this
+     *  repository lacks, with their trees and blobs, and points the branch
+     *  NAME/BRANCH at the remote branch's head.  Returns false, after
+     *  printing why, if that was not possible.
+     *  @return boolean */
+    public boolean fetch(String name, String branch) {
+        Remote remote = remote(name);
+        if (remote == null) {
+            return false;
+        } else if (!Refs.valid(branch)) {
+            System.out.println("That remote does not have that branch.");
+            return false;
+        } else if (Refs.clashes(name + "/" + branch, _branches.keySet())) {
+            System.out.println("That name conflicts with an existing "
+                               + "branch or remote.");
+            return false;
+        }
+        String head;
+        RepoLock lock = remote.lock();
+        try {
+            head = remote.refs().get(branch);
+            if (head == null) {
+                System.out.println("That remote does not have that branch.");
+                return false;
             }
+            Remote.transfer(remote.objects(), remote.graph(), objects(),
+                            head);
+        } finally {
+            lock.close();
+        }
+        node(head);
+        messages().update(graph());
+        _branches.put(name + "/" + branch, head);
+        return true;
+    }
+
+    /** Copies the commits of the current branch that the remote NAME
+     *  lacks to it, and points its BRANCH at the current head, provided
+     *  that BRANCH's head there is already in the current branch's
+     *  history. */
+    public void push(String name, String branch) {
+        Remote remote = remote(name);
+        if (remote == null) {
+            return;
+        }
+        String head = _branches.get(_head);
+        if (!Refs.valid(branch)) {
+            System.out.println("Invalid branch name.");
+            return;
+        }
+        RepoLock lock = remote.lock();
+        try {
+            String theirs = remote.refs().get(branch);
+            if (theirs == null && Refs.clashes(branch,
+                    remote.refs().branches().keySet())) {
+                System.out.println("That name conflicts with an existing "
+                                   + "branch or remote.");
+                return;
+            }
+            if (theirs != null && (!objects().hascommit(theirs)
+                    || !graph().isancestor(node(theirs), node(head)))) {
+                System.out.println("Please pull down remote changes before "
+                        + "pushing.");
+                return;
+            }
+            List<String> sent =
+                Remote.transfer(objects(), graph(), remote.objects(), head);
+            CommitGraph g = remote.graph();
+            for (String id : sent) {
+                g.node(remote.objects(), id);
+            }
+            Journal journal = new Journal(remote.dir());
+            remote.refs().set(journal, branch, theirs, head);
+            journal.commit();
+        } finally {
+            lock.close();
+        }
+    }
+
+    /** Fetches BRANCH from the remote NAME and merges NAME/BRANCH into
+     *  the current branch. */
+    public void pull(String name, String branch) {
+        if (fetch(name, branch)) {
+            merge(name + "/" + branch);
+        }
+    }
+
+    /** Returns the remote NAME, or null after printing why if it is not
+     *  known or its directory does not exist.
+     *  @return remote */
+    private Remote remote(String name) {
+        File f = new File(REMOTES_DIR, name);
+        if (!Refs.valid(name) || name.contains("/") || !f.isFile()) {
+            System.out.println("A remote with that name does not exist.");
+            return null;
+        }
+        Remote remote = new Remote(new File(Utils.readContentsAsString(f)));
+        if (!remote.exists()) {
+            System.out.println("Remote directory not found.");
+            return null;
         }
-        return null;
+        return remote;
+    }
+
+    /** Packs all loose objects. */
+    public void gc() {
+        objects().repack();
+    }
+
+    /** Moves any loose objects left outside their fan-out directories,
+     *  such as ones copied in from a repository written by an older
+     *  version of Gitlet, into them.  Opening the repository does this
+     *  once by itself. */
+    public void migrate() {
+        objects().migrate();
+    }
+
+    /** Returns the position of commit ID in the commit graph, first
+     *  adding it and any of its ancestors that are missing.
+     *  @return int */
+    private int node(String id) {
+        return graph().node(objects(), id);
+    }
+
+    /** Returns the commit graph of this repository, building it from the
+     *  commits in the object store if it has never been written.
+     *  @return graph */
+    private CommitGraph graph() {
+        if (_graph == null) {
+            _graph = CommitGraph.open(new File(GRAPH_DIR), objects());
+        }
+        return _graph;
+    }
+
+    /** Returns the message index of this repository, opening it if
+     *  needed.
+     *  @return index */
+    private MessageIndex messages() {
+        if (_messages == null) {
+            _messages = new MessageIndex(new File(".gitlet/messages"));
+        }
+        return _messages;
+    }
+
+    /** Returns the object store of this repository, opening it if
+     *  needed. */
+    private ObjectStore objects() {
+        if (_objects == null) {
+            _objects = ObjectStore.open(new File(".gitlet"));
+        }
+        return _objects;
+    }
+
+    /** Returns a summary of how well the caches served lookups so far.
+     *  @return string */
+    public String cachestats() {
+        return objects().cache().stats();
     }
 
     /** Accessor for branches.
@@ -746,6 +1209,58 @@ public class Gitlet implements Serializable {
         return _branches;
     }
 
+    /** Size of the buffer for log output. */
+    private static final int OUTPUT_BUFFER = 1 << 16;
+
+    /** Characters that make an argument of add a glob pattern. */
+    private static final Pattern GLOB = Pattern.compile("[*?\\[{]");
+
+    /** Where the stage is kept. */
+    private static final String STAGE_FILE = ".gitlet/stage";
+
+    /** Directory of the commit graph. */
+    private static final String GRAPH_DIR = ".gitlet/graph";
+
+    /** Directory of remote definitions, one file per remote holding the
+     *  path of its .gitlet directory. */
+    private static final String REMOTES_DIR = ".gitlet/remotes";
+
+    /** Version byte of the stage file format. */
+    private static final int STAGE_VERSION = 1;
+
+    /** The HEAD file and branch files. */
+    private Refs _refs;
+
+    /** The current branch as last read or written. */
+    private String _savedhead;
+
+    /** The branches as last read or written. */
+    private HashMap<String, String> _savedbranches;
+
+    /** The encoded stage as last read or written. */
+    private byte[] _savedstage;
+
+    /** True iff _savedstage was read from or written to the stage
+     *  file, rather than standing for the empty stage of a repository
+     *  that has none. */
+    private boolean _stageondisk;
+
+    /** The object store, opened on first use. */
+    private ObjectStore _objects;
+
+    /** The commit graph, opened on first use. */
+    private CommitGraph _graph;
+
+    /** The message index, opened on first use. */
+    private MessageIndex _messages;
+
+    /** The stat cache, read on first use. */
+    private StatCache _stats;
+
+    /** The files of the working directory, walked on first use in each
+     *  command. */
+    private WorkTree _worktree;
+
     /** Head string. */
     private String _head;
 
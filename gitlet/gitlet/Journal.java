@@ -0,0 +1,253 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/** A write-ahead journal making the updates of one command to the small
+ *  files of a repository's metadata directory (HEAD, the branch files
+ *  and the stage) atomic and durable.  The new contents of every file
+ *  the command changes are first written to the file "journal", ending
+ *  in a CRC-32 of all before it, and forced to disk: that is the moment
+ *  the command takes effect.  Each file is then replaced by renaming a
+ *  temporary copy over it, the replaced files are forced to disk
+ *  together, and the journal is removed.  A command killed before the
+ *  journal is complete leaves no trace; one killed after it is finished
+ *  by recover the next time the repository is opened.  Each file may
+ *  also be expected to hold given contents when the journal is
+ *  committed, making the updates a compare-and-swap: if another process
+ *  changed any of them meanwhile, nothing is written.
+ *  @author Santosh Tatipamula
+ */
+class Journal {
+
+    /** A journal of updates to files in ROOT. */
+    Journal(File root) {
+        _root = root;
+    }
+
+    /** Records that the file NAME, relative to the root, is to hold
+     *  CONTENTS. */
+    void put(String name, byte[] contents) {
+        _updates.put(name, contents);
+    }
+
+    /** Records that the file NAME, relative to the root, is to be
+     *  deleted. */
+    void delete(String name) {
+        _updates.put(name, null);
+    }
+
+    /** Records that the file NAME, relative to the root, must hold
+     *  CONTENTS, or must not exist if CONTENTS is null, when the updates
+     *  are committed. */
+    void expect(String name, byte[] contents) {
+        _expected.put(name, contents);
+    }
+
+    /** Returns true iff no updates are recorded.
+     *  @return boolean */
+    boolean isEmpty() {
+        return _updates.isEmpty();
+    }
+
+    /** Makes the recorded updates durably, as one, and forgets them.
+     *  Throws a GitletException, writing nothing, if a file does not hold
+     *  what it is expected to. */
+    void commit() {
+        if (_updates.isEmpty()) {
+            return;
+        }
+        for (String name : _expected.keySet()) {
+            File f = new File(_root, name);
+            byte[] now = f.isFile() ? Utils.readContents(f) : null;
+            if (!Arrays.equals(now, _expected.get(name))) {
+                _updates.clear();
+                _expected.clear();
+                throw Utils.error("The repository was changed by another "
+                                  + "command; try again.");
+            }
+        }
+        File journal = new File(_root, JOURNAL_FILE);
+        try (FileChannel ch = FileChannel.open(journal.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(record());
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        force(List.of(_root));
+        apply();
+        journal.delete();
+        _updates.clear();
+        _expected.clear();
+    }
+
+    /** Finishes the updates of a command on the repository whose
+     *  metadata lives in ROOT that was killed after its journal was
+     *  complete, and discards an incomplete journal. */
+    static void recover(File root) {
+        File journal = new File(root, JOURNAL_FILE);
+        if (!journal.isFile()) {
+            return;
+        }
+        Journal j = new Journal(root);
+        if (j.decode(Utils.readContents(journal))) {
+            j.apply();
+        }
+        journal.delete();
+    }
+
+    /** Forces FILES, which may include directories, to disk.  They are
+     *  forced in parallel, so that the file system can commit them in
+     *  as few disk flushes as it likes.  Missing files are skipped, as
+     *  are directories on systems that cannot force them. */
+    static void force(Collection<File> files) {
+        files.parallelStream().forEach(f -> {
+            try (FileChannel ch = FileChannel.open(f.toPath(),
+                     StandardOpenOption.READ)) {
+                ch.force(true);
+            } catch (IOException excp) {
+                if (f.isFile()) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        });
+    }
+
+    /** Replaces or deletes each file named in the updates, removing any
+     *  directories that deletions leave empty, and forces the results to
+     *  disk.  Temporary files have unique names, so that
+     *  commands recovering the same journal at once do not collide. */
+    private void apply() {
+        LinkedHashSet<File> touched = new LinkedHashSet<>();
+        for (String name : _updates.keySet()) {
+            File f = new File(_root, name);
+            byte[] contents = _updates.get(name);
+            if (contents == null) {
+                f.delete();
+                File dir = f.getParentFile();
+                while (!dir.equals(_root) && dir.delete()) {
+                    touched.add(dir.getParentFile());
+                    dir = dir.getParentFile();
+                }
+            } else {
+                f.getParentFile().mkdirs();
+                try {
+                    File tmp = File.createTempFile(JOURNAL_FILE, ".tmp",
+                                                   f.getParentFile());
+                    Utils.writeContents(tmp, contents);
+                    Files.move(tmp.toPath(), f.toPath(),
+                               StandardCopyOption.REPLACE_EXISTING,
+                               StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+                touched.add(f);
+            }
+            touched.add(f.getParentFile());
+        }
+        force(new ArrayList<>(touched));
+    }
+
+    /** Returns the journal record of the updates: MAGIC, their number,
+     *  each one's name, a flag telling whether it is a deletion and, if
+     *  not, its contents, and finally the CRC-32 of all that.
+     *  @return bytes */
+    byte[] record() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            Codec.writevarint(out, _updates.size());
+            for (String name : _updates.keySet()) {
+                byte[] contents = _updates.get(name);
+                Codec.writestring(out, name);
+                out.writeBoolean(contents == null);
+                if (contents != null) {
+                    Codec.writevarint(out, contents.length);
+                    out.write(contents);
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Reads the updates from the journal record DATA, returning false
+     *  if it is incomplete or damaged.
+     *  @return boolean */
+    private boolean decode(byte[] data) {
+        if (data.length < 2 * Integer.BYTES) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - Integer.BYTES);
+        int stored = ByteBuffer.wrap(data).getInt(data.length
+                                                  - Integer.BYTES);
+        if ((int) crc.getValue() != stored) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(
+                 new ByteArrayInputStream(data))) {
+            if (in.readInt() != MAGIC) {
+                return false;
+            }
+            for (int n = Codec.readvarint(in); n > 0; n -= 1) {
+                String name = Codec.readstring(in);
+                if (in.readBoolean()) {
+                    delete(name);
+                } else {
+                    byte[] contents = new byte[Codec.readvarint(in)];
+                    in.readFully(contents);
+                    put(name, contents);
+                }
+            }
+        } catch (IOException excp) {
+            return false;
+        }
+        return true;
+    }
+
+    /** Name of the journal file in the metadata directory. */
+    static final String JOURNAL_FILE = "journal";
+
+    /** First four bytes of a journal record. */
+    private static final int MAGIC = 0x474c4a31;
+
+    /** The metadata directory. */
+    private final File _root;
+
+    /** New contents of each file to update, or null for those to
+     *  delete, in the order recorded. */
+    private final LinkedHashMap<String, byte[]> _updates =
+        new LinkedHashMap<>();
+
+    /** Contents each file must hold when the updates are committed, or
+     *  null for those that must not exist. */
+    private final LinkedHashMap<String, byte[]> _expected =
+        new LinkedHashMap<>();
+
+}
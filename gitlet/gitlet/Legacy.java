@@ -0,0 +1,230 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Reading of the files written by older versions of Gitlet.  The
+ *  original kept all repository state in one Java-serialized file,
+ *  .gitlet/gitlets, and serialized each commit, with the map from its
+ *  file names to their blobs, as it was; a later version encoded commits
+ *  in binary but still with that map.  The classes the original
+ *  serialized have since changed beyond what serialization tolerates, so
+ *  the streams are read into private classes holding just the old
+ *  fields, under the old class names.
+ *  @author Santosh Tatipamula
+ */
+class Legacy {
+
+    /** Name of the old state file in the metadata directory. */
+    static final String STATE_FILE = "gitlets";
+
+    /** The repository state of the original Gitlet. */
+    static class State implements Serializable {
+        /** Matches any stream, whose class descriptor is replaced. */
+        private static final long serialVersionUID = 1L;
+
+        /** Name of the current branch. */
+        private String _head;
+
+        /** Head commit of each branch. */
+        private HashMap<String, String> _branches;
+
+        /** Blob ids of the staged files. */
+        private HashMap<String, String> _stage;
+
+        /** Names of the files staged for removal. */
+        private ArrayList<String> _untracked;
+
+        /** Returns the name of the current branch.
+         *  @return string */
+        String head() {
+            return _head;
+        }
+
+        /** Returns the head commit of each branch.
+         *  @return map */
+        HashMap<String, String> branches() {
+            return _branches;
+        }
+
+        /** Returns the blob ids of the staged files.
+         *  @return map */
+        HashMap<String, String> stage() {
+            return _stage == null ? new HashMap<>() : _stage;
+        }
+
+        /** Returns the names of the files staged for removal.
+         *  @return list */
+        ArrayList<String> removed() {
+            return _untracked == null ? new ArrayList<>() : _untracked;
+        }
+    }
+
+    /** A commit of an older Gitlet. */
+    private static class OldCommit implements Serializable {
+        /** Matches any stream, whose class descriptor is replaced. */
+        private static final long serialVersionUID = 1L;
+
+        /** A commit with MESSAGE, files MAPPING, FIRST flag, PARENTS and
+         *  TIMESTAMP. */
+        OldCommit(String message, HashMap<String, String> mapping,
+                  boolean first, String[] parents, String timestamp) {
+            _message = message;
+            _mapping = mapping;
+            _first = first;
+            _parents = parents;
+            _timestamp = timestamp;
+        }
+
+        /** The commit's message. */
+        private String _message;
+
+        /** Blob id of each of the commit's files, or null for the first
+         *  commit. */
+        private HashMap<String, String> _mapping;
+
+        /** Whether this is the first commit of its repository. */
+        private boolean _first;
+
+        /** The commit's parents. */
+        private String[] _parents;
+
+        /** The commit's timestamp. */
+        private String _timestamp;
+    }
+
+    /** Returns the repository state serialized in DATA by the original
+     *  Gitlet.
+     *  @return state */
+    static State readstate(byte[] data) {
+        return read(data, State.class);
+    }
+
+    /** Returns the commit with id ID that an older Gitlet stored as DATA,
+     *  either serialized or in the first binary encoding, writing the
+     *  tree of its files to OBJECTS.
+     *  @return commit */
+    static Commit readcommit(ObjectStore objects, String id, byte[] data) {
+        OldCommit old = serialized(data) ? read(data, OldCommit.class)
+            : decode(data);
+        HashMap<String, String> mapping =
+            old._mapping == null ? new HashMap<>() : old._mapping;
+        return new Commit(id, old._message, Tree.write(objects, mapping),
+                          old._first, old._parents, old._timestamp);
+    }
+
+    /** Returns the commit in the first binary encoding in DATA: the
+     *  magic number and version, a flags byte, the message and timestamp,
+     *  the raw ids of the parents, and then the files sorted by name, each
+     *  stored as the length of the prefix it shares with the previous
+     *  name plus the rest, followed by the raw blob id.
+     *  @return commit */
+    private static OldCommit decode(byte[] data) {
+        try (DataInputStream in = new DataInputStream(
+                 new ByteArrayInputStream(data))) {
+            if (in.readUnsignedShort() != COMMIT_MAGIC
+                    || in.readUnsignedByte() != COMMIT_VERSION) {
+                throw Utils.error("Unknown commit format.");
+            }
+            boolean first = (in.readUnsignedByte() & FIRST) != 0;
+            String message = Codec.readstring(in);
+            String timestamp = Codec.readstring(in);
+            int nparents = Codec.readvarint(in);
+            String[] parents = null;
+            if (nparents > 0) {
+                parents = new String[nparents];
+                for (int i = 0; i < nparents; i += 1) {
+                    parents[i] = Codec.readid(in);
+                }
+            }
+            int n = Codec.readvarint(in);
+            HashMap<String, String> mapping = new HashMap<>();
+            byte[] prev = new byte[0];
+            for (int i = 0; i < n; i += 1) {
+                int shared = Codec.readvarint(in);
+                byte[] raw = Arrays.copyOf(prev,
+                                           shared + Codec.readvarint(in));
+                in.readFully(raw, shared, raw.length - shared);
+                mapping.put(new String(raw, StandardCharsets.UTF_8),
+                            Codec.readid(in));
+                prev = raw;
+            }
+            return new OldCommit(message, mapping, first, parents,
+                                 timestamp);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true iff DATA is a Java serialization stream.
+     *  @return boolean */
+    static boolean serialized(byte[] data) {
+        return data.length >= 2 && (data[0] & 0xff) == SERIAL_MAGIC_0
+            && (data[1] & 0xff) == SERIAL_MAGIC_1;
+    }
+
+    /** Returns the object serialized in DATA as an instance of the old
+     *  class that CL stands in for.
+     *  @return object */
+    private static <T> T read(byte[] data, Class<T> cl) {
+        try (ObjectInputStream in = new Reader(
+                 new ByteArrayInputStream(data))) {
+            return cl.cast(in.readObject());
+        } catch (IOException | ClassNotFoundException
+                 | ClassCastException excp) {
+            throw Utils.error("Unreadable file from an older Gitlet: %s",
+                              excp.getMessage());
+        }
+    }
+
+    /** A stream reading the old classes as their stand-ins. */
+    private static class Reader extends ObjectInputStream {
+        /** A reader of the serialized objects in IN. */
+        Reader(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+            throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            if (desc.getName().equals(OLD_REPO)) {
+                return ObjectStreamClass.lookup(State.class);
+            } else if (desc.getName().equals(OLD_COMMIT)) {
+                return ObjectStreamClass.lookup(OldCommit.class);
+            }
+            return desc;
+        }
+    }
+
+    /** Name under which the original Gitlet serialized its state. */
+    private static final String OLD_REPO = "gitlet.Gitlet";
+
+    /** Name under which the original Gitlet serialized commits. */
+    private static final String OLD_COMMIT = "gitlet.Commit";
+
+    /** First two bytes of a commit in the first binary encoding. */
+    private static final int COMMIT_MAGIC = 0x4743;
+
+    /** Version of the first binary encoding of commits. */
+    private static final int COMMIT_VERSION = 1;
+
+    /** Flag bit marking the first commit of a repository. */
+    private static final int FIRST = 1;
+
+    /** First byte of a Java serialization stream. */
+    private static final int SERIAL_MAGIC_0 = 0xac;
+
+    /** Second byte of a Java serialization stream. */
+    private static final int SERIAL_MAGIC_1 = 0xed;
+
+}
@@ -0,0 +1,143 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** A three-way merge of two versions of a file with their common
+ *  ancestor, line by line.  Both versions are matched against the
+ *  ancestor with Diff.  Where the ancestor's lines are kept by both, the
+ *  versions agree; each stretch between such lines is taken from the
+ *  side that changed it, or from either if both changed it the same way.
+ *  Only stretches changed differently on both sides become conflicts,
+ *  written between the same markers merge has always used.
+ *  @author Santosh Tatipamula
+ */
+class LineMerge {
+
+    /** The merge of OURS and THEIRS, both descended from BASE. */
+    LineMerge(byte[] base, byte[] ours, byte[] theirs) {
+        _texts = new byte[][] {base, ours, theirs};
+        _bounds = new int[][] {
+            Diff.bounds(base), Diff.bounds(ours), Diff.bounds(theirs)
+        };
+        _ids = Diff.lineids(_texts, _bounds);
+        _out = new ByteArrayOutputStream(Math.max(ours.length,
+                                                  theirs.length));
+        merge();
+    }
+
+    /** Returns the merged text, with conflict markers if needed.
+     *  @return bytes */
+    byte[] result() {
+        return _out.toByteArray();
+    }
+
+    /** Returns the number of conflicting regions.
+     *  @return int */
+    int conflicts() {
+        return _conflicts;
+    }
+
+    /** Fills in the result. */
+    private void merge() {
+        int[] base = _ids[BASE];
+        int[] ours = Diff.match(base, _ids[OURS]);
+        int[] theirs = Diff.match(base, _ids[THEIRS]);
+        int o = 0;
+        int a = 0;
+        int b = 0;
+        while (true) {
+            int k = o;
+            while (k < base.length && ours[k] == a + k - o
+                   && theirs[k] == b + k - o) {
+                k += 1;
+            }
+            if (k > o) {
+                copy(BASE, o, k);
+                a += k - o;
+                b += k - o;
+                o = k;
+                continue;
+            }
+            if (o == base.length && a == _ids[OURS].length
+                    && b == _ids[THEIRS].length) {
+                break;
+            }
+            int next = o;
+            while (next < base.length
+                   && (ours[next] < 0 || theirs[next] < 0)) {
+                next += 1;
+            }
+            int enda = next < base.length ? ours[next] : _ids[OURS].length;
+            int endb =
+                next < base.length ? theirs[next] : _ids[THEIRS].length;
+            if (same(BASE, o, next, OURS, a, enda)) {
+                copy(THEIRS, b, endb);
+            } else if (same(BASE, o, next, THEIRS, b, endb)
+                       || same(OURS, a, enda, THEIRS, b, endb)) {
+                copy(OURS, a, enda);
+            } else {
+                _out.writeBytes(START);
+                copy(OURS, a, enda);
+                _out.writeBytes(MIDDLE);
+                copy(THEIRS, b, endb);
+                _out.writeBytes(END);
+                _conflicts += 1;
+            }
+            o = next;
+            a = enda;
+            b = endb;
+        }
+    }
+
+    /** Returns true iff lines [FROM1, TO1) of text T1 are the same as
+     *  lines [FROM2, TO2) of text T2. */
+    private boolean same(int t1, int from1, int to1,
+                         int t2, int from2, int to2) {
+        return Arrays.equals(_ids[t1], from1, to1, _ids[t2], from2, to2);
+    }
+
+    /** Appends lines [FROM, TO) of text T to the result. */
+    private void copy(int t, int from, int to) {
+        int start = _bounds[t][from];
+        _out.write(_texts[t], start, _bounds[t][to] - start);
+    }
+
+    /** Index of the common ancestor among the texts. */
+    private static final int BASE = 0;
+
+    /** Index of the current branch's version. */
+    private static final int OURS = 1;
+
+    /** Index of the given branch's version. */
+    private static final int THEIRS = 2;
+
+    /** Marker opening a conflict. */
+    static final byte[] START =
+        "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+
+    /** Marker between the two sides of a conflict. */
+    static final byte[] MIDDLE =
+        "=======\n".getBytes(StandardCharsets.UTF_8);
+
+    /** Marker closing a conflict. */
+    static final byte[] END =
+        ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+
+    /** The ancestor, ours and theirs. */
+    private final byte[][] _texts;
+
+    /** Line bounds of each text, as returned by Diff.bounds. */
+    private final int[][] _bounds;
+
+    /** Line ids of each text. */
+    private final int[][] _ids;
+
+    /** The merged text. */
+    private final ByteArrayOutputStream _out;
+
+    /** Number of conflicting regions written. */
+    private int _conflicts;
+
+}
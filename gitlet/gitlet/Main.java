@@ -9,11 +9,22 @@ import java.util.List;
  */
 public class Main {
 
-    /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
-    public static void main(String... args) {
+    /** Usage: java gitlet.Main ARGV, where ARGV contains
+     *  [--stats] <COMMAND> <OPERAND> .... */
+    public static void main(String... argv) {
+        String[] args = argv;
+        if (args.length > 0 && args[0].equals(STATS)) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
         if (args.length == 0) {
             System.out.println("Please enter a command.");
+        } else if (args[0].equals("daemon") && repoexists()) {
+            if (args.length == 1) {
+                Daemon.serve();
+            } else if (args.length != 2 || !args[1].equals("stop")
+                       || !Daemon.forward(args, System.out)) {
+                System.out.println("Incorrect operands.");
+            }
         } else if (!repoexists() && !args[0].equals("init")) {
             System.out.println("Not in an initialized Gitlet directory.");
         } else if (repoexists() && args[0].equals("init")) {
@@ -22,32 +33,83 @@ public class Main {
         } else if (repoexists() && !allcommands.contains(args[0])) {
             System.out.println("No command with that name exists.");
         } else {
-            String[] arguments = Arrays.copyOfRange(args, 1, args.length);
             if (Arrays.asList(commands).contains(args[0])) {
                 if (repoexists()) {
-                    carti = getgitlet();
-                    runcommand(args[0], arguments);
-                    File gitlet = new File(".gitlet/gitlets");
-                    Utils.writeObject(gitlet, carti);
+                    if (!Daemon.forward(argv, System.out)) {
+                        locked(null, argv);
+                    }
                 } else {
                     if (args[0].equals("init")) {
                         carti = new Gitlet();
-                        File gitlet = new File(".gitlet/gitlets");
-                        Utils.writeObject(gitlet, carti);
+                        carti.close();
                     }
                 }
             }
         }
     }
 
+    /** Runs the command and operands in ARGS, as execute does, holding
+     *  the repository lock: shared if the command only reads the
+     *  repository, and exclusive otherwise.  The command runs on REPO,
+     *  unless REPO is null or another process has changed the repository
+     *  since REPO last saw it, in which case the repository is opened
+     *  afresh under the lock.  A reading command that would have to
+     *  convert the repository from an older format, or bring the commit
+     *  graph or message index up to date, waits for the exclusive lock
+     *  instead.  Returns the repository used.
+     *  @return repository */
+    static Gitlet locked(Gitlet repo, String[] args) {
+        File root = new File(".gitlet");
+        String command = args[0].equals(STATS) ? args[1] : args[0];
+        RepoLock lock = RepoLock.acquire(root, READ_ONLY.contains(command)
+                                         && Gitlet.upgraded());
+        try {
+            if (repo == null || repo.stale()) {
+                repo = Gitlet.open();
+            }
+            if (lock.shared() && !repo.cachescurrent()) {
+                lock.close();
+                lock = RepoLock.acquire(root, false);
+                if (repo.stale()) {
+                    repo = Gitlet.open();
+                }
+            }
+            execute(repo, args);
+            return repo;
+        } finally {
+            lock.close();
+        }
+    }
+
+    /** Runs the command and operands in ARGS on the repository REPO and
+     *  writes back whatever it changed.  Errors in the command are
+     *  reported as messages.  If ARGS starts with --stats, the use of
+     *  REPO's caches is reported afterwards. */
+    static void execute(Gitlet repo, String[] args) {
+        carti = repo;
+        boolean stats = args[0].equals(STATS);
+        if (stats) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        try {
+            runcommand(args[0], Arrays.copyOfRange(args, 1, args.length));
+            carti.close();
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+        if (stats) {
+            System.out.println(carti.cachestats());
+        }
+    }
+
     /** Runs commands. ARG,  ARGUMENTS*/
     public static void runcommand(String arg, String[] arguments) {
         if (arg.equals("add")) {
-            carti.add(arguments[0]);
+            carti.add(arguments);
         } else if (arg.equals("commit")) {
             carti.commit(arguments[0]);
         } else if (arg.equals("log")) {
-            carti.log();
+            carti.log(arguments);
         } else if (arg.equals("checkout")) {
             if (arguments.length > 1) {
                 carti.checkout(arguments);
@@ -59,9 +121,13 @@ public class Main {
         } else if (arg.equals("rm")) {
             carti.rm(arguments[0]);
         } else if (arg.equals("find")) {
-            carti.find(arguments[0]);
+            if (arguments.length == 2 && arguments[0].equals("--grep")) {
+                carti.findgrep(arguments[1]);
+            } else {
+                carti.find(arguments[0]);
+            }
         } else if (arg.equals("global-log")) {
-            carti.globallog();
+            carti.globallog(arguments);
         } else if (arg.equals("branch")) {
             carti.branch(arguments[0]);
         } else if (arg.equals("rm-branch")) {
@@ -70,6 +136,22 @@ public class Main {
             carti.reset(arguments[0]);
         } else if (arg.equals("merge")) {
             carti.merge(arguments[0]);
+        } else if (arg.equals("gc")) {
+            carti.gc();
+        } else if (arg.equals("migrate")) {
+            carti.migrate();
+        } else if (arg.equals("diff")) {
+            carti.diff(arguments);
+        } else if (arg.equals("add-remote")) {
+            carti.addremote(arguments[0], arguments[1]);
+        } else if (arg.equals("rm-remote")) {
+            carti.rmremote(arguments[0]);
+        } else if (arg.equals("fetch")) {
+            carti.fetch(arguments[0], arguments[1]);
+        } else if (arg.equals("push")) {
+            carti.push(arguments[0], arguments[1]);
+        } else if (arg.equals("pull")) {
+            carti.pull(arguments[0], arguments[1]);
         }
     }
 
@@ -80,12 +162,12 @@ public class Main {
         return gitlet.exists();
     }
 
-    /** Loads gitlet.
-     * @return gitlet*/
-    private static Gitlet getgitlet() {
-        File gitlet = new File(".gitlet/gitlets");
-        return Utils.readObject(gitlet, Gitlet.class);
-    }
+    /** Commands that only read the repository. */
+    private static final List<String> READ_ONLY =
+        List.of("log", "global-log", "find", "status", "diff");
+
+    /** Flag before a command asking for cache statistics. */
+    private static final String STATS = "--stats";
 
     /** The Gitlet.*/
     private static Gitlet carti;
@@ -94,7 +176,8 @@ public class Main {
     private static String[] commands = new String[]{"init", "add",
         "commit", "rm", "log",
         "global-log", "find", "status", "checkout",
-        "branch", "rm-branch", "reset", "merge"};
+        "branch", "rm-branch", "reset", "merge", "gc", "migrate",
+        "diff", "add-remote", "rm-remote", "fetch", "push", "pull"};
 
     /** The valid commands for Gitlet as a list.*/
     private static List<String> allcommands = Arrays.asList(commands);
@@ -0,0 +1,175 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Writes and deletes working files in parallel.  Operations are queued
+ *  with write and delete and carried out by run, which splits them into
+ *  batches of BATCH operations so that small files do not each cost a
+ *  task, and hands the batches to a pool of at most THREADS workers.
+ *  If operations fail, the others still complete and run reports the
+ *  failure of the earliest one queued, so errors do not depend on
+ *  scheduling.  Operations on the same path must not be queued together.
+ *  All deletes are done, and the directories they leave empty removed,
+ *  before any file is written, so that a file may replace a directory
+ *  and a directory a file.  Directories are created as needed for the
+ *  files written.
+ *  @author Santosh Tatipamula
+ */
+class Materializer {
+
+    /** A materializer restoring blobs from OBJECTS and recording the
+     *  files it writes in STATS. */
+    Materializer(ObjectStore objects, StatCache stats) {
+        _objects = objects;
+        _stats = stats;
+        _names = new ArrayList<>();
+        _shas = new ArrayList<>();
+    }
+
+    /** Queues writing the contents of blob SHA to the working file
+     *  NAME. */
+    void write(String name, String sha) {
+        _names.add(name);
+        _shas.add(sha);
+    }
+
+    /** Queues deleting the working file NAME. */
+    void delete(String name) {
+        _names.add(name);
+        _shas.add(null);
+    }
+
+    /** Returns the number of queued operations. */
+    int size() {
+        return _names.size();
+    }
+
+    /** Carries out and clears all queued operations: first every delete,
+     *  then the removal of the directories they left empty, and then
+     *  every write. */
+    void run() {
+        int n = _names.size();
+        RuntimeException[] errors = new RuntimeException[n];
+        ArrayList<Integer> deletes = new ArrayList<>();
+        ArrayList<Integer> writes = new ArrayList<>();
+        ArrayList<String> deleted = new ArrayList<>();
+        for (int k = 0; k < n; k += 1) {
+            if (_shas.get(k) == null) {
+                deletes.add(k);
+                deleted.add(_names.get(k));
+            } else {
+                writes.add(k);
+            }
+        }
+        runall(deletes, errors);
+        WorkTree.prune(deleted);
+        runall(writes, errors);
+        _names.clear();
+        _shas.clear();
+        for (RuntimeException excp : errors) {
+            if (excp != null) {
+                throw excp;
+            }
+        }
+    }
+
+    /** Carries out the queued operations numbered OPS, in batches spread
+     *  over the pool, recording the failure of operation K in
+     *  ERRORS[K]. */
+    private void runall(List<Integer> ops, RuntimeException[] errors) {
+        int n = ops.size();
+        if (n <= BATCH) {
+            runbatch(ops, 0, n, errors);
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(
+            Math.min(THREADS, (n + BATCH - 1) / BATCH));
+        try {
+            ArrayList<Future<?>> batches = new ArrayList<>();
+            for (int start = 0; start < n; start += BATCH) {
+                int from = start;
+                int to = Math.min(n, start + BATCH);
+                batches.add(pool.submit(
+                    () -> runbatch(ops, from, to, errors)));
+            }
+            for (Future<?> batch : batches) {
+                batch.get();
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Carries out the queued operations numbered OPS[FROM] to OPS[TO]
+     *  (exclusive), recording the failure of operation K in ERRORS[K]. */
+    private void runbatch(List<Integer> ops, int from, int to,
+                          RuntimeException[] errors) {
+        for (int i = from; i < to; i += 1) {
+            int k = ops.get(i);
+            String name = _names.get(k);
+            String sha = _shas.get(k);
+            try {
+                File f = new File(name);
+                if (sha == null) {
+                    if (f.isFile()) {
+                        f.delete();
+                    }
+                    _stats.remove(name);
+                } else {
+                    clear(f);
+                    _objects.copyblob(sha, f);
+                    _stats.record(f, name, sha);
+                }
+            } catch (RuntimeException excp) {
+                errors[k] = excp;
+            }
+        }
+    }
+
+    /** Makes way for writing the file F: removes an empty directory at F
+     *  and any file where one of its directories belongs, and creates
+     *  those directories. */
+    private static void clear(File f) {
+        if (f.isDirectory()) {
+            f.delete();
+        }
+        File parent = f.getParentFile();
+        if (parent == null) {
+            return;
+        }
+        for (File p = parent; p != null; p = p.getParentFile()) {
+            if (p.isFile()) {
+                p.delete();
+            }
+        }
+        parent.mkdirs();
+    }
+
+    /** Operations per task. */
+    private static final int BATCH = 64;
+
+    /** Largest number of worker threads. */
+    private static final int THREADS =
+        Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /** Source of blob contents. */
+    private final ObjectStore _objects;
+
+    /** Index of the working files. */
+    private final StatCache _stats;
+
+    /** Paths of the queued operations. */
+    private final List<String> _names;
+
+    /** Blob ids to write for the queued operations, null for deletes. */
+    private final List<String> _shas;
+
+}
@@ -0,0 +1,196 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/** What merge does to each path that changed since the split point.
+ *  The changes from the split point to each branch are found with
+ *  Tree.diff, and the two sorted change lists are walked together once,
+ *  classifying every path by its blob ids at the split point, in the
+ *  current branch and in the given branch.  The contents of paths that
+ *  must be merged are then computed in parallel by resolve, leaving
+ *  only staging and working-file updates to the caller.
+ *  @author Santosh Tatipamula
+ */
+class MergePlan {
+
+    /** Take the given branch's version. */
+    static final int TAKE = 1;
+
+    /** Remove the file, which only the given branch deleted. */
+    static final int REMOVE = 2;
+
+    /** Merge the two versions line by line. */
+    static final int MERGE = 3;
+
+    /** Conflict: the current branch changed the file and the given
+     *  branch deleted it. */
+    static final int DELETED = 4;
+
+    /** The plan for merging the tree OTHER into the tree HEAD, whose
+     *  common ancestor has tree SPLIT, reading trees from OBJECTS. */
+    MergePlan(ObjectStore objects, String split, String head,
+              String other) {
+        _objects = objects;
+        Iterator<Map.Entry<String, String[]>> ours =
+            Tree.diff(objects, split, head).entrySet().iterator();
+        Iterator<Map.Entry<String, String[]>> theirs =
+            Tree.diff(objects, split, other).entrySet().iterator();
+        Map.Entry<String, String[]> o = next(ours);
+        Map.Entry<String, String[]> t = next(theirs);
+        while (o != null || t != null) {
+            int cmp = o == null ? 1
+                : t == null ? -1 : o.getKey().compareTo(t.getKey());
+            if (cmp < 0) {
+                o = next(ours);
+            } else if (cmp > 0) {
+                add(t.getKey(), t.getValue()[0], t.getValue()[0],
+                    t.getValue()[1]);
+                t = next(theirs);
+            } else {
+                add(o.getKey(), o.getValue()[0], o.getValue()[1],
+                    t.getValue()[1]);
+                o = next(ours);
+                t = next(theirs);
+            }
+        }
+        _results = new String[_paths.size()];
+        _conflicted = new boolean[_paths.size()];
+    }
+
+    /** Computes, in parallel, the merged contents of every path whose
+     *  action is MERGE or DELETED, storing them as blobs. */
+    void resolve() {
+        IntStream.range(0, size()).parallel()
+            .filter(k -> action(k) >= MERGE).forEach(this::resolve);
+    }
+
+    /** Returns the number of paths in the plan.
+     *  @return int */
+    int size() {
+        return _paths.size();
+    }
+
+    /** Returns the Kth path, in path order.
+     *  @return string */
+    String path(int k) {
+        return _paths.get(k);
+    }
+
+    /** Returns the action for the Kth path.
+     *  @return int */
+    int action(int k) {
+        return _actions.get(k);
+    }
+
+    /** Returns the Kth path's blob id in the given branch.
+     *  @return string */
+    String theirs(int k) {
+        return _ids.get(k)[THEIRS];
+    }
+
+    /** Returns the blob id of the merged contents of the Kth path, once
+     *  resolved.
+     *  @return string */
+    String result(int k) {
+        return _results[k];
+    }
+
+    /** Returns true iff the merged contents of the Kth path contain
+     *  conflicts.
+     *  @return boolean */
+    boolean conflicted(int k) {
+        return _conflicted[k];
+    }
+
+    /** Records PATH, with blob ids BASE at the split point, OURS in the
+     *  current branch and THEIRS in the given branch (null where
+     *  absent), unless the current branch's version should stand.
+     *  Paths changed only in the current branch never get here. */
+    private void add(String path, String base, String ours, String theirs) {
+        int action;
+        if (theirs == null) {
+            if (ours == null) {
+                return;
+            }
+            action = ours.equals(base) ? REMOVE : DELETED;
+        } else if (ours == null) {
+            if (base != null) {
+                return;
+            }
+            action = TAKE;
+        } else if (ours.equals(base)) {
+            action = TAKE;
+        } else if (ours.equals(theirs) || theirs.equals(base)) {
+            return;
+        } else {
+            action = MERGE;
+        }
+        _paths.add(path);
+        _actions.add(action);
+        _ids.add(new String[] {base, ours, theirs});
+    }
+
+    /** Computes and stores the merged contents of the Kth path. */
+    private void resolve(int k) {
+        String[] ids = _ids.get(k);
+        byte[] merged;
+        if (action(k) == DELETED) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.writeBytes(LineMerge.START);
+            out.writeBytes(_objects.readblob(ids[OURS]));
+            out.writeBytes(LineMerge.MIDDLE);
+            out.writeBytes(LineMerge.END);
+            merged = out.toByteArray();
+            _conflicted[k] = true;
+        } else {
+            LineMerge lines = new LineMerge(
+                ids[BASE] == null
+                    ? new byte[0] : _objects.readblob(ids[BASE]),
+                _objects.readblob(ids[OURS]), _objects.readblob(ids[THEIRS]));
+            merged = lines.result();
+            _conflicted[k] = lines.conflicts() > 0;
+        }
+        String sha = Utils.sha1(merged);
+        _objects.writeblob(sha, merged, ids[OURS]);
+        _results[k] = sha;
+    }
+
+    /** Returns the next element of IT, or null if there is none. */
+    private static Map.Entry<String, String[]> next(
+        Iterator<Map.Entry<String, String[]>> it) {
+        return it.hasNext() ? it.next() : null;
+    }
+
+    /** Index of the split point's blob id among a path's ids. */
+    private static final int BASE = 0;
+
+    /** Index of the current branch's blob id among a path's ids. */
+    private static final int OURS = 1;
+
+    /** Index of the given branch's blob id among a path's ids. */
+    private static final int THEIRS = 2;
+
+    /** Source of trees and blobs, and destination of merged blobs. */
+    private final ObjectStore _objects;
+
+    /** Paths with something to do, in order. */
+    private final ArrayList<String> _paths = new ArrayList<>();
+
+    /** The action for each path. */
+    private final ArrayList<Integer> _actions = new ArrayList<>();
+
+    /** The blob ids of each path at the split point, in the current
+     *  branch and in the given branch. */
+    private final ArrayList<String[]> _ids = new ArrayList<>();
+
+    /** Blob ids of merged contents, by path index. */
+    private final String[] _results;
+
+    /** Whether each path's merged contents have conflicts. */
+    private final boolean[] _conflicted;
+
+}
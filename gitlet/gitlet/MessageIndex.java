@@ -0,0 +1,253 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+
+/** An on-disk index of the messages of the commits in a CommitGraph, used
+ *  by "find".  It is a chained hash table keyed by the whole message (for
+ *  exact searches) and by every three-character substring of it (for
+ *  substring searches).  The file "buckets" holds a header and the head of
+ *  each bucket's chain; the append-only file "records" holds the entries,
+ *  each a 64-bit key hash, a commit's position in the graph and a link to
+ *  the next entry of its bucket.  Matches are confirmed against the
+ *  messages stored in the graph, so hash collisions cannot produce wrong
+ *  answers.  Both files are memory-mapped.  Each update reaches the disk
+ *  in order: the graph's new commits, then the new records, then the
+ *  bucket heads that point to them, and last the count of commits
+ *  indexed.  A command killed part way leaves at worst records that
+ *  nothing points to, or chains that list a commit twice, and the
+ *  commits it did not count are indexed again by the next update.
+ *  Links are byte offsets, so records after a torn one stay readable.
+ *  @author Santosh Tatipamula
+ */
+class MessageIndex {
+
+    /** The index stored in directory DIR. */
+    MessageIndex(File dir) {
+        _dir = dir;
+        _buckets = new File(dir, "buckets");
+        _records = new File(dir, "records");
+    }
+
+    /** Returns the number of commits indexed, without creating the index
+     *  if it does not exist.
+     *  @return int */
+    int indexed() {
+        if (!_buckets.isFile()) {
+            return 0;
+        }
+        load();
+        return _heads.getInt(Integer.BYTES);
+    }
+
+    /** Indexes the commits of G not yet in the index. */
+    void update(CommitGraph g) {
+        load();
+        int size = g.size();
+        int done = _heads.getInt(Integer.BYTES);
+        if (done >= size) {
+            return;
+        }
+        g.sync();
+        ArrayList<long[]> entries = new ArrayList<>();
+        for (int k = done; k < size; k += 1) {
+            String message = g.message(k);
+            entries.add(new long[] {hash(EXACT + message), k});
+            HashSet<String> grams = new HashSet<>();
+            for (int i = 0; i + GRAM <= message.length(); i += 1) {
+                grams.add(message.substring(i, i + GRAM));
+            }
+            for (String gram : grams) {
+                entries.add(new long[] {hash(GRAM_KEY + gram), k});
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(entries.size() * RECORD);
+        HashMap<Integer, Long> heads = new HashMap<>();
+        try (FileChannel ch = FileChannel.open(_records.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long offset = ch.size();
+            for (long[] e : entries) {
+                int b = bucket(e[0]);
+                out.putLong(e[0]);
+                out.putInt((int) e[1]);
+                out.putLong(heads.getOrDefault(b,
+                    _heads.getLong(HEADER + b * Long.BYTES)));
+                heads.put(b, offset + out.position());
+            }
+            out.flip();
+            while (out.hasRemaining()) {
+                ch.write(out, offset + out.position());
+            }
+            ch.force(false);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (int b : heads.keySet()) {
+            _heads.putLong(HEADER + b * Long.BYTES, heads.get(b));
+        }
+        _heads.force();
+        _heads.putInt(Integer.BYTES, size);
+        _heads.force();
+        _map = null;
+    }
+
+    /** Returns the positions in G, in increasing order, of the commits
+     *  whose message is MESSAGE. */
+    List<Integer> exact(CommitGraph g, String message) {
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int k : chain(hash(EXACT + message))) {
+            if (g.message(k).equals(message)) {
+                result.add(k);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the positions in G, in increasing order, of the commits
+     *  whose message contains TEXT.  Only the commits listed under the
+     *  rarest three-character substring of TEXT are examined; searches
+     *  for shorter strings look at every message in G. */
+    List<Integer> containing(CommitGraph g, String text) {
+        TreeSet<Integer> candidates = null;
+        if (text.length() < GRAM) {
+            candidates = new TreeSet<>();
+            for (int k = 0; k < g.size(); k += 1) {
+                candidates.add(k);
+            }
+        } else {
+            for (int i = 0; i + GRAM <= text.length(); i += 1) {
+                TreeSet<Integer> these =
+                    chain(hash(GRAM_KEY + text.substring(i, i + GRAM)));
+                if (candidates == null
+                        || these.size() < candidates.size()) {
+                    candidates = these;
+                }
+            }
+        }
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int k : candidates) {
+            if (g.message(k).contains(text)) {
+                result.add(k);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the positions recorded under key hash KEY. */
+    private TreeSet<Integer> chain(long key) {
+        load();
+        TreeSet<Integer> result = new TreeSet<>();
+        long link = _heads.getLong(HEADER + bucket(key) * Long.BYTES);
+        while (link != 0) {
+            int pos = (int) (link - RECORD);
+            if (_map.getLong(pos) == key) {
+                result.add(_map.getInt(pos + Long.BYTES));
+            }
+            link = _map.getLong(pos + Long.BYTES + Integer.BYTES);
+        }
+        return result;
+    }
+
+    /** Returns the bucket of key hash KEY. */
+    private static int bucket(long key) {
+        return (int) (key ^ (key >>> 32)) & (BUCKETS - 1);
+    }
+
+    /** Returns the 64-bit FNV-1a hash of the UTF-8 bytes of S. */
+    private static long hash(String s) {
+        long h = FNV_OFFSET;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    /** Maps the bucket file, creating it if needed, and the record file
+     *  into memory if that has not been done yet. */
+    private void load() {
+        if (_heads == null) {
+            _dir.mkdirs();
+            boolean fresh = !_buckets.isFile();
+            try (FileChannel ch = FileChannel.open(_buckets.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE)) {
+                _heads = ch.map(FileChannel.MapMode.READ_WRITE, 0,
+                                HEADER + (long) BUCKETS * Long.BYTES);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (fresh) {
+                _records.delete();
+                _heads.putInt(0, MAGIC);
+            } else if (_heads.getInt(0) != MAGIC) {
+                throw Utils.error("Corrupt message index.");
+            }
+        }
+        if (_map == null) {
+            if (!_records.isFile()) {
+                _map = ByteBuffer.allocate(0);
+                return;
+            }
+            try (FileChannel ch = FileChannel.open(_records.toPath())) {
+                _map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Magic number at the start of the bucket file. */
+    private static final int MAGIC = 0x474d4958;
+
+    /** Bytes before the bucket heads: the magic number and the number
+     *  of commits indexed. */
+    private static final int HEADER = 2 * Integer.BYTES;
+
+    /** Number of buckets; a power of two. */
+    private static final int BUCKETS = 1 << 16;
+
+    /** Bytes per record. */
+    private static final int RECORD = Long.BYTES + Integer.BYTES
+        + Long.BYTES;
+
+    /** Length of the substrings indexed. */
+    private static final int GRAM = 3;
+
+    /** Prefix of the key of a whole message. */
+    private static final String EXACT = "=";
+
+    /** Prefix of the key of a substring. */
+    private static final String GRAM_KEY = "~";
+
+    /** FNV-1a offset basis. */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    /** FNV-1a prime. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Directory holding the index. */
+    private File _dir;
+
+    /** The bucket file. */
+    private File _buckets;
+
+    /** The record file. */
+    private File _records;
+
+    /** The mapped bucket file, or null if not yet mapped. */
+    private MappedByteBuffer _heads;
+
+    /** The mapped record file, or null if not yet mapped. */
+    private ByteBuffer _map;
+
+}
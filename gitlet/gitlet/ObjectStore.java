@@ -0,0 +1,640 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** The object database of a Gitlet repository.  Newly written commits,
+ *  trees and blobs are loose files under commits/, trees/ and staging/,
+ *  fanned out by the first two hex digits of their ids (the object ab12...
+ *  is the file ab/12...), so that no directory holds more than a small
+ *  share of them and finding one object is a single lookup by name;
+ *  "gc" moves them into a pack so lookups need no directory scans.
+ *  Objects are stored deflated, and a blob may be stored as a delta
+ *  against an earlier version of the same file, with chains of deltas at
+ *  most MAX_DEPTH long.  Loose objects are written without waiting for
+ *  the disk; sync forces all those written by a command to disk at once,
+ *  before anything refers to them.
+ *  @author Santosh Tatipamula
+ */
+class ObjectStore {
+
+    /** The object store of the repository whose metadata lives in ROOT
+     *  (normally .gitlet). */
+    ObjectStore(File root) {
+        _commits = new File(root, "commits");
+        _blobs = new File(root, "staging");
+        _trees = new File(root, "trees");
+        _pack = new PackFile(new File(root, "pack"));
+        _cache = new CommitCache(CACHE_BUDGET);
+        _layout = new File(root, LAYOUT_FILE);
+    }
+
+    /** Returns the object store of the repository whose metadata lives in
+     *  ROOT, first moving its loose objects into their fan-out
+     *  directories if an older version of Gitlet wrote them. */
+    static ObjectStore open(File root) {
+        ObjectStore result = new ObjectStore(root);
+        if (root.isDirectory() && !result._layout.exists()) {
+            result.migrate();
+        }
+        return result;
+    }
+
+    /** Returns true iff the object store of the repository whose metadata
+     *  lives in ROOT is known to use the fan-out layout, so that opening
+     *  it moves nothing.
+     *  @return boolean */
+    static boolean migrated(File root) {
+        return new File(root, LAYOUT_FILE).exists();
+    }
+
+    /** Moves every loose object still kept directly in commits/, trees/
+     *  or staging/ into its fan-out directory, and records that the store
+     *  uses the fan-out layout.  An interrupted migration is finished by
+     *  running it again.  Returns the number of objects moved.
+     *  @return int */
+    int migrate() {
+        int moved = 0;
+        for (File dir : new File[] {_commits, _trees, _blobs}) {
+            String[] names = dir.list();
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                File from = new File(dir, name);
+                if (name.length() != Utils.UID_LENGTH || !from.isFile()) {
+                    continue;
+                }
+                File to = shard(loose(dir, name));
+                try {
+                    Files.move(from.toPath(), to.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+                _written.add(to);
+                moved += 1;
+            }
+            _written.add(dir);
+        }
+        sync();
+        Utils.writeContents(_layout, LAYOUT + "\n");
+        return moved;
+    }
+
+    /** Forces every loose object written since the last sync to disk,
+     *  with the directories that name them, all at once. */
+    void sync() {
+        LinkedHashSet<File> files = new LinkedHashSet<>();
+        for (File f = _written.poll(); f != null; f = _written.poll()) {
+            files.add(f);
+            files.add(f.getParentFile());
+        }
+        if (!files.isEmpty()) {
+            Journal.force(new ArrayList<>(files));
+        }
+    }
+
+    /** Returns the file in DIR holding the loose object ID, in its fan-out
+     *  directory.
+     *  @return file */
+    private static File loose(File dir, String id) {
+        return new File(new File(dir, id.substring(0, FANOUT)),
+                        id.substring(FANOUT));
+    }
+
+    /** Returns the loose object file F, first creating its fan-out
+     *  directory if needed.
+     *  @return file */
+    private File shard(File f) {
+        if (f.getParentFile().mkdirs()) {
+            _written.add(f.getParentFile());
+        }
+        return f;
+    }
+
+    /** Returns the commit with id ID, or null if there is none.  Recently
+     *  used commits are answered from a cache.  Commits stored by older
+     *  versions of Gitlet are converted as they are read. */
+    Commit readcommit(String id) {
+        Commit cached = _cache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        File f = loose(_commits, id);
+        byte[] stored;
+        if (f.exists()) {
+            stored = Utils.readContents(f);
+        } else {
+            stored = _pack.read(id);
+            if (stored == null) {
+                return null;
+            }
+        }
+        byte[] encoded = Legacy.serialized(stored) ? stored
+            : inflate(stored, 0);
+        Commit c = Commit.encoded(encoded) ? Commit.decode(encoded)
+            : Legacy.readcommit(this, id, encoded);
+        _cache.put(id, c, encoded.length);
+        return c;
+    }
+
+    /** Stores commit C as a loose object. */
+    void writecommit(Commit c) {
+        byte[] encoded = c.encode();
+        String id = c.hash();
+        replace(loose(_commits, id), deflate(encoded));
+        _cache.put(id, c, encoded.length);
+    }
+
+    /** Returns the commit cache.
+     *  @return cache */
+    CommitCache cache() {
+        return _cache;
+    }
+
+    /** Returns true iff a commit with id ID exists. */
+    boolean hascommit(String id) {
+        return id != null && id.length() == Utils.UID_LENGTH
+            && (loose(_commits, id).exists()
+            || _pack.type(id) == PackFile.COMMIT);
+    }
+
+    /** Returns the ids of all commits, loose and packed. */
+    List<String> commitids() {
+        ArrayList<String> result = new ArrayList<>();
+        String[] shards = _commits.list();
+        if (shards != null) {
+            for (String shard : shards) {
+                looseids(shard, "", Integer.MAX_VALUE, result);
+            }
+        }
+        result.addAll(_pack.ids(PackFile.COMMIT));
+        return result;
+    }
+
+    /** Adds to RESULT, until it holds LIMIT ids, the ids of the loose
+     *  commits in the fan-out directory SHARD whose ids start with
+     *  PREFIX.  Lists nothing unless SHARD is a fan-out directory. */
+    private void looseids(String shard, String prefix, int limit,
+                          List<String> result) {
+        if (shard.length() != FANOUT || !HEX.matcher(shard).matches()) {
+            return;
+        }
+        String[] names = new File(_commits, shard).list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            String id = shard + name;
+            if (result.size() >= limit) {
+                return;
+            } else if (id.length() == Utils.UID_LENGTH
+                       && id.startsWith(prefix)) {
+                result.add(id);
+            }
+        }
+    }
+
+    /** Returns the ids of at most LIMIT commits whose ids start with
+     *  PREFIX, loose ones first. */
+    List<String> commitswithprefix(String prefix, int limit) {
+        ArrayList<String> result = new ArrayList<>();
+        if (!HEX.matcher(prefix).matches()) {
+            return result;
+        }
+        if (prefix.length() >= FANOUT) {
+            looseids(prefix.substring(0, FANOUT), prefix, limit, result);
+        } else {
+            String[] shards = _commits.list();
+            for (int i = 0; shards != null && i < shards.length; i += 1) {
+                if (shards[i].startsWith(prefix)) {
+                    looseids(shards[i], prefix, limit, result);
+                }
+            }
+        }
+        _pack.withprefix(prefix, PackFile.COMMIT, limit, result);
+        return result;
+    }
+
+    /** Returns the tree with id ID. */
+    Tree readtree(String id) {
+        File f = loose(_trees, id);
+        byte[] stored;
+        if (f.exists()) {
+            stored = Utils.readContents(f);
+        } else {
+            stored = _pack.read(id);
+            if (stored == null) {
+                throw Utils.error("Missing tree %s.", id);
+            }
+        }
+        return Tree.decode(inflate(stored, 0));
+    }
+
+    /** Stores tree T as a loose object, unless it already exists, and
+     *  returns its id. */
+    String writetree(Tree t) {
+        byte[] encoded = t.encode();
+        String id = Utils.sha1(encoded);
+        if (!hastree(id)) {
+            replace(loose(_trees, id), deflate(encoded));
+        }
+        return id;
+    }
+
+    /** Returns the contents of the blob with id SHA. */
+    byte[] readblob(String sha) {
+        byte[] stored = storedblob(sha);
+        if (!encoded(stored)) {
+            return stored;
+        } else if (stored[KIND] == FULL) {
+            return inflate(stored, KIND + 1);
+        } else {
+            byte[] base = Arrays.copyOfRange(stored, KIND + 2,
+                KIND + 2 + ID_BYTES);
+            return Delta.apply(readblob(Utils.bytesToHex(base)),
+                inflate(stored, KIND + 2 + ID_BYTES));
+        }
+    }
+
+    /** Stores CONTENTS as the blob with id SHA, unless it already exists.
+     *  Several threads may store blobs at once.
+     *  If BASE is not null, it names a blob holding an earlier version
+     *  of the same file, against which CONTENTS may be delta-encoded. */
+    void writeblob(String sha, byte[] contents, String base) {
+        if (!hasblob(sha)) {
+            replace(loose(_blobs, sha), encodeblob(contents, base));
+        }
+    }
+
+    /** Stores the contents of file F as a blob, possibly as a delta
+     *  against the blob BASE, and returns its id.  Files too large to
+     *  delta-encode are hashed and deflated in one streaming pass. */
+    String writefile(File f, String base) {
+        if (f.length() <= DELTA_LIMIT) {
+            byte[] contents = Utils.readContents(f);
+            String sha = Utils.sha1(contents);
+            writeblob(sha, contents, base);
+            return sha;
+        }
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        File tmp;
+        try {
+            _blobs.mkdirs();
+            tmp = File.createTempFile("blob", ".tmp", _blobs);
+            try (FileChannel in = FileChannel.open(f.toPath());
+                 OutputStream file = new BufferedOutputStream(
+                     Files.newOutputStream(tmp.toPath()));
+                 DeflaterOutputStream out = new DeflaterOutputStream(file)) {
+                file.write(BLOB_MAGIC);
+                file.write(FULL);
+                ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+                while (in.read(buf) >= 0) {
+                    md.update(buf.array(), 0, buf.position());
+                    out.write(buf.array(), 0, buf.position());
+                    buf.clear();
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String sha = Utils.bytesToHex(md.digest());
+        if (hasblob(sha)) {
+            tmp.delete();
+        } else {
+            File dest = shard(loose(_blobs, sha));
+            try {
+                Files.move(tmp.toPath(), dest.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            _written.add(dest);
+        }
+        return sha;
+    }
+
+    /** Writes CONTENTS to the loose object file F by way of a temporary
+     *  file in its fan-out directory, so that no reader, no other thread
+     *  writing the same object, and no later command after a crash sees
+     *  it partly written.  F is forced to disk by the next sync. */
+    private void replace(File f, byte[] contents) {
+        try {
+            File tmp = File.createTempFile("obj", ".tmp",
+                                           shard(f).getParentFile());
+            Utils.writeContents(tmp, contents);
+            Files.move(tmp.toPath(), f.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _written.add(f);
+    }
+
+    /** Returns the id the contents of file F would have as a blob,
+     *  reading it a buffer at a time. */
+    static String hashfile(File f) {
+        try (FileChannel in = FileChannel.open(f.toPath())) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            while (in.read(buf) >= 0) {
+                md.update(buf.array(), 0, buf.position());
+                buf.clear();
+            }
+            return Utils.bytesToHex(md.digest());
+        } catch (IOException | NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the contents of blob SHA to file DEST.  Loose blobs stored
+     *  whole are inflated straight into DEST a buffer at a time. */
+    void copyblob(String sha, File dest) {
+        File f = loose(_blobs, sha);
+        if (!f.exists() || f.length() <= DELTA_LIMIT) {
+            Utils.writeContents(dest, readblob(sha));
+            return;
+        }
+        try (InputStream in = new BufferedInputStream(
+                 Files.newInputStream(f.toPath()), BUFFER_SIZE)) {
+            byte[] header = in.readNBytes(KIND + 1);
+            if (!encoded(header) || header[KIND] != FULL) {
+                Utils.writeContents(dest, readblob(sha));
+                return;
+            }
+            Files.copy(new InflaterInputStream(in), dest.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the stored form of CONTENTS: a delta against the blob
+     *  BASE if that is possible and saves at least half the space, and
+     *  otherwise CONTENTS deflated. */
+    private byte[] encodeblob(byte[] contents, String base) {
+        if (base != null && contents.length <= DELTA_LIMIT
+                && hasblob(base)) {
+            byte[] stored = storedblob(base);
+            int depth = encoded(stored) && stored[KIND] == DELTA
+                ? stored[KIND + 1] : 0;
+            if (depth < MAX_DEPTH) {
+                byte[] old = readblob(base);
+                if (old.length <= DELTA_LIMIT) {
+                    byte[] delta = deflate(Delta.create(old, contents));
+                    if (delta.length < contents.length / 2) {
+                        ByteArrayOutputStream out =
+                            new ByteArrayOutputStream();
+                        out.write(BLOB_MAGIC, 0, BLOB_MAGIC.length);
+                        out.write(DELTA);
+                        out.write(depth + 1);
+                        out.write(Utils.hexToBytes(base), 0, ID_BYTES);
+                        out.write(delta, 0, delta.length);
+                        return out.toByteArray();
+                    }
+                }
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(BLOB_MAGIC, 0, BLOB_MAGIC.length);
+        out.write(FULL);
+        byte[] body = deflate(contents);
+        out.write(body, 0, body.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the stored bytes of blob SHA. */
+    private byte[] storedblob(String sha) {
+        File f = loose(_blobs, sha);
+        if (f.exists()) {
+            return Utils.readContents(f);
+        }
+        byte[] packed = _pack.read(sha);
+        if (packed == null) {
+            throw Utils.error("Missing blob %s.", sha);
+        }
+        return packed;
+    }
+
+    /** Returns true iff STORED is in the encoded blob format rather than
+     *  the raw contents written by older versions of Gitlet. */
+    private static boolean encoded(byte[] stored) {
+        return stored.length > KIND
+            && Arrays.equals(stored, 0, BLOB_MAGIC.length,
+                             BLOB_MAGIC, 0, BLOB_MAGIC.length)
+            && (stored[KIND] == FULL || stored[KIND] == DELTA);
+    }
+
+    /** Returns DATA compressed with deflate. */
+    static byte[] deflate(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream z = new DeflaterOutputStream(out)) {
+            z.write(data);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the inflation of the deflated bytes of DATA starting at
+     *  OFFSET. */
+    static byte[] inflate(byte[] data, int offset) {
+        try (InflaterInputStream z = new InflaterInputStream(
+                new ByteArrayInputStream(data, offset,
+                                         data.length - offset))) {
+            return z.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true iff a blob with id SHA exists. */
+    boolean hasblob(String sha) {
+        return loose(_blobs, sha).exists()
+            || _pack.type(sha) == PackFile.BLOB;
+    }
+
+    /** Returns true iff a tree with id ID exists. */
+    boolean hastree(String id) {
+        return loose(_trees, id).exists()
+            || _pack.type(id) == PackFile.TREE;
+    }
+
+    /** Returns the stored bytes of the commit, tree or blob (as given by
+     *  TYPE) with id ID, exactly as kept loose or in the pack. */
+    byte[] stored(String id, byte type) {
+        File dir = type == PackFile.COMMIT ? _commits
+            : type == PackFile.TREE ? _trees : _blobs;
+        File f = loose(dir, id);
+        if (f.exists()) {
+            return Utils.readContents(f);
+        }
+        byte[] packed = _pack.read(id);
+        if (packed == null) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        return packed;
+    }
+
+    /** Returns the id of the blob that the stored blob STORED is a delta
+     *  against, or null if it is stored whole. */
+    static String deltabase(byte[] stored) {
+        if (!encoded(stored) || stored[KIND] != DELTA) {
+            return null;
+        }
+        return Utils.bytesToHex(Arrays.copyOfRange(stored, KIND + 2,
+                                                   KIND + 2 + ID_BYTES));
+    }
+
+    /** Adds the objects named by IDS, of types TYPES and with stored
+     *  bytes CONTENTS as returned by stored, to the pack in one batch. */
+    void receive(List<String> ids, List<Byte> types,
+                 List<byte[]> contents) {
+        if (!ids.isEmpty()) {
+            _pack.append(ids, types, contents);
+        }
+    }
+
+    /** Moves every loose commit, tree and blob into the pack. */
+    void repack() {
+        ArrayList<String> ids = new ArrayList<>();
+        ArrayList<Byte> types = new ArrayList<>();
+        ArrayList<byte[]> contents = new ArrayList<>();
+        ArrayList<File> loose = new ArrayList<>();
+        collect(_commits, PackFile.COMMIT, ids, types, contents, loose);
+        collect(_trees, PackFile.TREE, ids, types, contents, loose);
+        collect(_blobs, PackFile.BLOB, ids, types, contents, loose);
+        if (ids.isEmpty()) {
+            return;
+        }
+        _pack.append(ids, types, contents);
+        for (File f : loose) {
+            f.delete();
+            f.getParentFile().delete();
+        }
+    }
+
+    /** Adds each loose object in the fan-out directories of DIR, of type
+     *  TYPE, to IDS, TYPES, CONTENTS and LOOSE. */
+    private void collect(File dir, byte type, List<String> ids,
+                         List<Byte> types, List<byte[]> contents,
+                         List<File> loose) {
+        String[] shards = dir.list();
+        if (shards == null) {
+            return;
+        }
+        for (String shard : shards) {
+            if (shard.length() != FANOUT) {
+                continue;
+            }
+            List<String> names =
+                Utils.plainFilenamesIn(new File(dir, shard));
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                if (shard.length() + name.length() != Utils.UID_LENGTH) {
+                    continue;
+                }
+                File f = new File(new File(dir, shard), name);
+                ids.add(shard + name);
+                types.add(type);
+                contents.add(Utils.readContents(f));
+                loose.add(f);
+            }
+        }
+    }
+
+    /** Abbreviated or full hex object ids. */
+    private static final Pattern HEX = Pattern.compile("[0-9a-f]{0,40}");
+
+    /** Hex digits of an id naming its fan-out directory. */
+    private static final int FANOUT = 2;
+
+    /** Name of the file recording the layout of the loose objects. */
+    private static final String LAYOUT_FILE = "layout";
+
+    /** Contents of the layout file of a store using fan-out
+     *  directories. */
+    private static final String LAYOUT = "fanout";
+
+    /** Bytes of memory the commit cache may use. */
+    private static final long CACHE_BUDGET = 32L << 20;
+
+    /** Size of the buffer used to stream large files. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Longest delta chain allowed. */
+    static final int MAX_DEPTH = 10;
+
+    /** Largest blob that is delta-encoded. */
+    static final int DELTA_LIMIT = 1 << 24;
+
+    /** Prefix of encoded blobs. */
+    private static final byte[] BLOB_MAGIC = {'G', 'L', 'B'};
+
+    /** Position of the kind byte (FULL or DELTA) of an encoded blob. */
+    private static final int KIND = 3;
+
+    /** Kind of a blob stored whole. */
+    private static final byte FULL = 'F';
+
+    /** Kind of a blob stored as a delta, followed by its depth and the
+     *  raw id of its base. */
+    private static final byte DELTA = 'D';
+
+    /** Bytes in a raw object id. */
+    private static final int ID_BYTES = 20;
+
+    /** Directory of loose commits. */
+    private File _commits;
+
+    /** Directory of loose blobs. */
+    private File _blobs;
+
+    /** Directory of loose trees. */
+    private File _trees;
+
+    /** The pack. */
+    private PackFile _pack;
+
+    /** Recently read and written commits. */
+    private CommitCache _cache;
+
+    /** File recording that loose objects are in fan-out directories. */
+    private File _layout;
+
+    /** Loose object files, and new directories, written since the last
+     *  sync. */
+    private final ConcurrentLinkedQueue<File> _written =
+        new ConcurrentLinkedQueue<>();
+
+}
@@ -0,0 +1,297 @@
+package gitlet;
+
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+
+/** A Gitlet pack: an append-only data file holding many objects back to
+ *  back, plus a sorted index of fixed-width entries (raw 20-byte id, type,
+ *  offset, length) that is memory-mapped and binary searched on lookup.
+ *  @author Santosh Tatipamula
+ */
+class PackFile {
+
+    /** Type tag of commit objects. */
+    static final byte COMMIT = 1;
+
+    /** Type tag of blob objects. */
+    static final byte BLOB = 2;
+
+    /** Type of a packed tree. */
+    static final byte TREE = 3;
+
+    /** The pack stored as DIR/objects.pack and DIR/objects.idx. */
+    PackFile(File dir) {
+        _dir = dir;
+        _data = new File(dir, "objects.pack");
+        _index = new File(dir, "objects.idx");
+    }
+
+    /** Returns true iff the pack holds an object with hex id ID. */
+    boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /** Returns the type of object ID, or 0 if it is not in the pack. */
+    byte type(String id) {
+        int k = find(id);
+        if (k < 0) {
+            return 0;
+        }
+        return _map.get(HEADER + k * ENTRY + ID_BYTES);
+    }
+
+    /** Returns the stored bytes of object ID, or null if it is not in
+     *  the pack. */
+    byte[] read(String id) {
+        int k = find(id);
+        if (k < 0) {
+            return null;
+        }
+        int pos = HEADER + k * ENTRY + ID_BYTES + 1;
+        long offset = _map.getLong(pos);
+        int length = _map.getInt(pos + Long.BYTES);
+        byte[] result = new byte[length];
+        try (RandomAccessFile in = new RandomAccessFile(_data, "r")) {
+            in.seek(offset);
+            in.readFully(result);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Returns the hex ids of all packed objects of type TYPE, in
+     *  sorted order. */
+    List<String> ids(byte type) {
+        ArrayList<String> result = new ArrayList<>();
+        if (!load()) {
+            return result;
+        }
+        byte[] raw = new byte[ID_BYTES];
+        for (int k = 0; k < _count; k += 1) {
+            int pos = HEADER + k * ENTRY;
+            if (_map.get(pos + ID_BYTES) == type) {
+                _map.get(pos, raw);
+                result.add(Utils.bytesToHex(raw));
+            }
+        }
+        return result;
+    }
+
+    /** Adds to RESULT the hex ids of packed objects of type TYPE that
+     *  start with the hex string PREFIX, stopping once RESULT holds LIMIT
+     *  ids.  The ids are found by binary search for the first id not less
+     *  than PREFIX, followed by a scan of the ids sharing it. */
+    void withprefix(String prefix, byte type, int limit,
+                    List<String> result) {
+        if (!load() || prefix.length() > Utils.UID_LENGTH) {
+            return;
+        }
+        StringBuilder low = new StringBuilder(prefix);
+        while (low.length() < Utils.UID_LENGTH) {
+            low.append('0');
+        }
+        byte[] key = Utils.hexToBytes(low.toString());
+        byte[] probe = new byte[ID_BYTES];
+        int lo = 0;
+        int hi = _count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            _map.get(HEADER + mid * ENTRY, probe);
+            if (Arrays.compareUnsigned(probe, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int k = lo; k < _count && result.size() < limit; k += 1) {
+            int pos = HEADER + k * ENTRY;
+            _map.get(pos, probe);
+            String id = Utils.bytesToHex(probe);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            if (_map.get(pos + ID_BYTES) == type && !result.contains(id)) {
+                result.add(id);
+            }
+        }
+    }
+
+    /** Appends the objects named by IDS, of types TYPES and with contents
+     *  CONTENTS, to the data file and rewrites the index to cover them.
+     *  Objects already in the pack, or earlier in IDS, are skipped. */
+    void append(List<String> ids, List<Byte> types, List<byte[]> contents) {
+        ArrayList<Entry> entries = new ArrayList<>();
+        if (load()) {
+            for (int k = 0; k < _count; k += 1) {
+                int pos = HEADER + k * ENTRY;
+                byte[] raw = new byte[ID_BYTES];
+                _map.get(pos, raw);
+                entries.add(new Entry(raw, _map.get(pos + ID_BYTES),
+                    _map.getLong(pos + ID_BYTES + 1),
+                    _map.getInt(pos + ID_BYTES + 1 + Long.BYTES)));
+            }
+        }
+        HashSet<String> appended = new HashSet<>();
+        _dir.mkdirs();
+        try (RandomAccessFile out = new RandomAccessFile(_data, "rw")) {
+            long offset = out.length();
+            out.seek(offset);
+            for (int i = 0; i < ids.size(); i += 1) {
+                if (contains(ids.get(i)) || !appended.add(ids.get(i))) {
+                    continue;
+                }
+                byte[] body = contents.get(i);
+                out.write(body);
+                entries.add(new Entry(Utils.hexToBytes(ids.get(i)),
+                    types.get(i), offset, body.length));
+                offset += body.length;
+            }
+            out.getFD().sync();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        entries.sort(Comparator.comparing(e -> e._id,
+            Arrays::compareUnsigned));
+        writeindex(entries);
+    }
+
+    /** Writes ENTRIES, sorted by id, as the new index. */
+    private void writeindex(List<Entry> entries) {
+        File tmp = new File(_dir, "objects.idx.tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        tmp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(entries.size());
+            for (Entry e : entries) {
+                out.write(e._id);
+                out.writeByte(e._type);
+                out.writeLong(e._offset);
+                out.writeInt(e._length);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Journal.force(List.of(tmp));
+        try {
+            Files.move(tmp.toPath(), _index.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Journal.force(List.of(_dir));
+        _map = null;
+    }
+
+    /** Returns the position in the index of ID, or -1 if absent. */
+    private int find(String id) {
+        if (id == null || id.length() != Utils.UID_LENGTH || !load()) {
+            return -1;
+        }
+        byte[] key = Utils.hexToBytes(id);
+        byte[] probe = new byte[ID_BYTES];
+        int lo = 0;
+        int hi = _count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            _map.get(HEADER + mid * ENTRY, probe);
+            int c = Arrays.compareUnsigned(probe, key);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Maps the index into memory if that has not been done yet.  Returns
+     *  false if there is no pack. */
+    private synchronized boolean load() {
+        if (_map != null) {
+            return true;
+        }
+        if (!_index.isFile()) {
+            return false;
+        }
+        try (FileChannel ch = FileChannel.open(_index.toPath())) {
+            _map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_map.getInt(0) != MAGIC) {
+            throw Utils.error("Corrupt pack index.");
+        }
+        _count = _map.getInt(Integer.BYTES);
+        return true;
+    }
+
+    /** One index entry: where an object lies in the data file. */
+    private static class Entry {
+        /** An entry for the object with raw id ID and type TYPE, stored
+         *  as LENGTH bytes at OFFSET. */
+        Entry(byte[] id, byte type, long offset, int length) {
+            _id = id;
+            _type = type;
+            _offset = offset;
+            _length = length;
+        }
+
+        /** Raw object id. */
+        private final byte[] _id;
+
+        /** Object type. */
+        private final byte _type;
+
+        /** Position of the object in the data file. */
+        private final long _offset;
+
+        /** Length of the object in the data file. */
+        private final int _length;
+    }
+
+    /** Magic number at the start of an index file. */
+    private static final int MAGIC = 0x47504b31;
+
+    /** Bytes in a raw object id. */
+    private static final int ID_BYTES = 20;
+
+    /** Bytes of index header. */
+    private static final int HEADER = 2 * Integer.BYTES;
+
+    /** Bytes per index entry. */
+    private static final int ENTRY = ID_BYTES + 1 + Long.BYTES
+        + Integer.BYTES;
+
+    /** Directory containing the pack. */
+    private File _dir;
+
+    /** The data file. */
+    private File _data;
+
+    /** The index file. */
+    private File _index;
+
+    /** The mapped index, or null if not yet mapped. */
+    private MappedByteBuffer _map;
+
+    /** Number of entries in the mapped index. */
+    private int _count;
+
+}
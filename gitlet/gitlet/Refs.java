@@ -0,0 +1,137 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+
+/** The references of a Gitlet repository: the file HEAD naming the
+ *  current branch, and one file under refs/ per branch holding the id of
+ *  its head commit.  Each is small and rewritten only when it changes,
+ *  by way of a Journal, so that the changes a command makes to several
+ *  of them happen together or not at all, and only if no other process
+ *  changed them since they were read.  Branch names are paths under
+ *  refs/, so a name must stay inside it and must not be a directory of
+ *  another branch's file, nor have one as its directory.
+ *  @author Santosh Tatipamula
+ */
+class Refs {
+
+    /** The references of the repository whose metadata lives in ROOT. */
+    Refs(File root) {
+        _head = new File(root, HEAD_FILE);
+        _refs = new File(root, REFS_DIR);
+    }
+
+    /** Returns the name of the current branch. */
+    String head() {
+        return Utils.readContentsAsString(_head).trim();
+    }
+
+    /** Records in JOURNAL that BRANCH is to replace OLD (null if there
+     *  is none) as the current branch. */
+    void sethead(Journal journal, String old, String branch) {
+        journal.expect(HEAD_FILE, bytes(old));
+        journal.put(HEAD_FILE, bytes(branch));
+    }
+
+    /** Returns the head commit of BRANCH, or null if there is no such
+     *  branch. */
+    String get(String branch) {
+        File f = new File(_refs, branch);
+        if (!f.isFile()) {
+            return null;
+        }
+        return Utils.readContentsAsString(f).trim();
+    }
+
+    /** Records in JOURNAL that ID is to replace OLD (null for a new
+     *  branch) as the head commit of BRANCH. */
+    void set(Journal journal, String branch, String old, String id) {
+        journal.expect(REFS_DIR + "/" + branch, bytes(old));
+        journal.put(REFS_DIR + "/" + branch, bytes(id));
+    }
+
+    /** Records in JOURNAL that BRANCH, whose head commit is OLD, is to be
+     *  removed. */
+    void delete(Journal journal, String branch, String old) {
+        journal.expect(REFS_DIR + "/" + branch, bytes(old));
+        journal.delete(REFS_DIR + "/" + branch);
+    }
+
+    /** Returns true iff NAME can name a branch: one or more components
+     *  separated by single "/"s, none empty, "." or "..", and none
+     *  containing a backslash or ending in ".tmp", the suffix of the
+     *  temporary files that replace branch files.
+     *  @return boolean */
+    static boolean valid(String name) {
+        for (String part : name.split("/", -1)) {
+            if (part.isEmpty() || part.equals(".") || part.equals("..")
+                    || part.contains("\\") || part.endsWith(".tmp")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns true iff the branch NAME would have to be a directory of
+     *  one of the branches NAMES, or one of them a directory of it.
+     *  @return boolean */
+    static boolean clashes(String name, Collection<String> names) {
+        for (String other : names) {
+            if (other.startsWith(name + "/")
+                    || name.startsWith(other + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns a map from every branch name to its head commit. */
+    HashMap<String, String> branches() {
+        HashMap<String, String> result = new HashMap<>();
+        collect(_refs, "", result);
+        return result;
+    }
+
+    /** Adds the branches in DIR, whose names start with PREFIX, to
+     *  RESULT. */
+    private void collect(File dir, String prefix,
+                         HashMap<String, String> result) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.isDirectory()) {
+                collect(f, prefix + f.getName() + "/", result);
+            } else if (!f.getName().endsWith(".tmp")) {
+                result.put(prefix + f.getName(),
+                           Utils.readContentsAsString(f).trim());
+            }
+        }
+    }
+
+    /** Returns the contents of a reference file holding VALUE, or null
+     *  if VALUE is null.
+     *  @return bytes */
+    private static byte[] bytes(String value) {
+        if (value == null) {
+            return null;
+        }
+        return (value + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Name of the file naming the current branch. */
+    private static final String HEAD_FILE = "HEAD";
+
+    /** Name of the directory of branch files. */
+    private static final String REFS_DIR = "refs";
+
+    /** The HEAD file. */
+    private File _head;
+
+    /** The directory of branch files. */
+    private File _refs;
+
+}
@@ -0,0 +1,168 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+
+/** Another Gitlet repository on this machine, named by the path of its
+ *  .gitlet directory, and the copying of commits between repositories
+ *  that fetch and push are made of.  A transfer walks the sending side's
+ *  commit graph back from a branch head, stopping at commits the
+ *  receiving side already has, and sends only the commits, trees and
+ *  blobs the receiver lacks, in their stored form, as one batch appended
+ *  to the receiver's pack.  Since a repository holding a commit or tree
+ *  holds everything it refers to, each tree the receiver already has cuts
+ *  off the walk beneath it.
+ *  @author Santosh Tatipamula
+ */
+class Remote {
+
+    /** The repository whose metadata lives in DIR. */
+    Remote(File dir) {
+        _dir = dir;
+        _refs = new Refs(dir);
+    }
+
+    /** Locks the repository exclusively, as a command changing it would,
+     *  first finishing the updates of any command on it that was
+     *  interrupted, and returns the lock.  Fetching takes the same lock
+     *  as pushing, since it may add to the repository's commit graph.
+     *  The caller already holds the lock on its own repository, so this
+     *  gives up with a GitletException after LOCK_WAIT milliseconds
+     *  rather than risk waiting forever on a command doing the same in
+     *  the other direction.
+     *  @return lock */
+    RepoLock lock() {
+        RepoLock lock = RepoLock.acquire(_dir, LOCK_WAIT);
+        Journal.recover(_dir);
+        return lock;
+    }
+
+    /** Returns the repository's metadata directory.
+     *  @return directory */
+    File dir() {
+        return _dir;
+    }
+
+    /** Returns true iff the repository exists.
+     *  @return boolean */
+    boolean exists() {
+        return new File(_dir, "HEAD").isFile();
+    }
+
+    /** Returns the repository's references.
+     *  @return refs */
+    Refs refs() {
+        return _refs;
+    }
+
+    /** Returns the repository's object store, opening it if needed.
+     *  @return store */
+    ObjectStore objects() {
+        if (_objects == null) {
+            _objects = ObjectStore.open(_dir);
+        }
+        return _objects;
+    }
+
+    /** Returns the repository's commit graph, built as the repository
+     *  itself would build it if it has never been written.
+     *  @return graph */
+    CommitGraph graph() {
+        if (_graph == null) {
+            _graph = CommitGraph.open(new File(_dir, "graph"), objects());
+        }
+        return _graph;
+    }
+
+    /** Copies to the object store TO the commit HEAD of the store FROM,
+     *  whose commit graph is GRAPH, and every ancestor of it that TO
+     *  lacks, with the trees and blobs they need.  Returns the ids of the
+     *  commits copied, parents before children.
+     *  @return list of ids */
+    static List<String> transfer(ObjectStore from, CommitGraph graph,
+                                 ObjectStore to, String head) {
+        ArrayList<Integer> missing = new ArrayList<>();
+        HashSet<Integer> seen = new HashSet<>();
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        work.push(graph.node(from, head));
+        while (!work.isEmpty()) {
+            int k = work.pop();
+            if (k == CommitGraph.NONE || !seen.add(k)
+                    || to.hascommit(graph.id(k))) {
+                continue;
+            }
+            missing.add(k);
+            work.push(graph.parent(k));
+            work.push(graph.secondparent(k));
+        }
+        missing.sort(Comparator.comparingInt(graph::generation));
+        ArrayList<String> commits = new ArrayList<>();
+        ArrayList<String> ids = new ArrayList<>();
+        ArrayList<Byte> types = new ArrayList<>();
+        ArrayList<byte[]> contents = new ArrayList<>();
+        HashSet<String> sent = new HashSet<>();
+        for (int k : missing) {
+            String id = graph.id(k);
+            commits.add(id);
+            add(from, id, PackFile.COMMIT, ids, types, contents);
+            ArrayList<String> trees = new ArrayList<>();
+            ArrayList<String> blobs = new ArrayList<>();
+            Tree.reachable(from, from.readcommit(id).gettree(),
+                           x -> sent.contains(x) || to.hastree(x)
+                               || to.hasblob(x), trees, blobs);
+            for (String tree : trees) {
+                sent.add(tree);
+                add(from, tree, PackFile.TREE, ids, types, contents);
+            }
+            ArrayDeque<String> pending = new ArrayDeque<>(blobs);
+            while (!pending.isEmpty()) {
+                String blob = pending.pop();
+                if (!sent.add(blob)) {
+                    continue;
+                }
+                byte[] stored = add(from, blob, PackFile.BLOB, ids, types,
+                                    contents);
+                String base = ObjectStore.deltabase(stored);
+                if (base != null && !sent.contains(base)
+                        && !to.hasblob(base)) {
+                    pending.push(base);
+                }
+            }
+        }
+        to.receive(ids, types, contents);
+        return commits;
+    }
+
+    /** Appends the id ID, type TYPE and stored bytes in FROM of an object
+     *  to IDS, TYPES and CONTENTS, returning the stored bytes.
+     *  @return bytes */
+    private static byte[] add(ObjectStore from, String id, byte type,
+                              List<String> ids, List<Byte> types,
+                              List<byte[]> contents) {
+        byte[] stored = from.stored(id, type);
+        ids.add(id);
+        types.add(type);
+        contents.add(stored);
+        return stored;
+    }
+
+    /** Milliseconds to wait for the lock on a remote repository. */
+    private static final long LOCK_WAIT = 10000;
+
+    /** The repository's metadata directory. */
+    private final File _dir;
+
+    /** The repository's references. */
+    private final Refs _refs;
+
+    /** The repository's object store, or null if not yet opened. */
+    private ObjectStore _objects;
+
+    /** The repository's commit graph, or null if not yet opened. */
+    private CommitGraph _graph;
+
+}
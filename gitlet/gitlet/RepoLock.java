@@ -0,0 +1,103 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+
+/** A lock on a Gitlet repository, held on the file "lock" in its
+ *  metadata directory with FileChannel.lock, so that it is released
+ *  when the process holding it dies.  Commands that only read the
+ *  repository hold it shared and run side by side; commands that change
+ *  it hold it exclusively, waiting for every other command to finish.
+ *  @author Santosh Tatipamula
+ */
+class RepoLock implements AutoCloseable {
+
+    /** A held lock LOCK, taken through CHANNEL. */
+    private RepoLock(FileChannel channel, FileLock lock) {
+        _channel = channel;
+        _lock = lock;
+    }
+
+    /** Returns a lock on the repository whose metadata lives in ROOT,
+     *  shared if SHARED and otherwise exclusive, waiting until it can be
+     *  had.
+     *  @return lock */
+    static RepoLock acquire(File root, boolean shared) {
+        try {
+            FileChannel ch = FileChannel.open(
+                new File(root, LOCK_FILE).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new RepoLock(ch, ch.lock(0, Long.MAX_VALUE, shared));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns an exclusive lock on the repository whose metadata lives
+     *  in ROOT, waiting at most MILLIS milliseconds for it.  Throws a
+     *  GitletException if it cannot be had in that time.  A command
+     *  that locks a second repository while holding the lock on its own
+     *  uses this, so that two such commands locking the same two
+     *  repositories in opposite orders fail rather than wait for each
+     *  other forever.
+     *  @return lock */
+    static RepoLock acquire(File root, long millis) {
+        long deadline = System.currentTimeMillis() + millis;
+        try {
+            FileChannel ch = FileChannel.open(
+                new File(root, LOCK_FILE).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            while (true) {
+                FileLock lock;
+                try {
+                    lock = ch.tryLock();
+                } catch (OverlappingFileLockException excp) {
+                    lock = null;
+                }
+                if (lock != null) {
+                    return new RepoLock(ch, lock);
+                } else if (System.currentTimeMillis() >= deadline) {
+                    ch.close();
+                    throw Utils.error("The repository %s is in use; try "
+                                      + "again.", root.getParent());
+                }
+                Thread.sleep(RETRY);
+            }
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true iff this lock is shared.
+     *  @return boolean */
+    boolean shared() {
+        return _lock.isShared();
+    }
+
+    /** Releases the lock. */
+    @Override
+    public void close() {
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Name of the lock file in the metadata directory. */
+    static final String LOCK_FILE = "lock";
+
+    /** Milliseconds between attempts to take a lock that is held. */
+    private static final long RETRY = 50;
+
+    /** The open lock file. */
+    private final FileChannel _channel;
+
+    /** The lock held on it. */
+    private final FileLock _lock;
+
+}
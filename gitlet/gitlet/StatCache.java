@@ -0,0 +1,218 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/** The index of a Gitlet working directory: for each file whose contents
+ *  were last hashed or written by Gitlet, its size, modification time,
+ *  inode number and blob id.  A file whose stat information still matches
+ *  its entry is known to hold that blob without being read.  Files
+ *  modified within RACY_WINDOW of the time the index was written are
+ *  "racily clean" (a later change could keep the same time stamp) and are
+ *  always rehashed.
+ *  @author Santosh Tatipamula
+ */
+class StatCache {
+
+    /** The index stored in FILE. */
+    StatCache(File file) {
+        _file = file;
+        _entries = new ConcurrentHashMap<>();
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(
+                     file.toPath())))) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            _stamp = in.readLong();
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String path = in.readUTF();
+                long[] stat = new long[] {
+                    in.readLong(), in.readLong(), in.readLong()};
+                byte[] raw = new byte[ID_BYTES];
+                in.readFully(raw);
+                _entries.put(path, new Entry(stat, Utils.bytesToHex(raw)));
+            }
+        } catch (IOException excp) {
+            _entries.clear();
+        }
+    }
+
+    /** Returns the blob id of the contents of file F, whose path in the
+     *  working directory is PATH, hashing it only if the index does not
+     *  already vouch for it. */
+    String hash(File f, String path) {
+        String known = lookup(f, path);
+        if (known != null) {
+            return known;
+        }
+        String sha = ObjectStore.hashfile(f);
+        record(f, path, sha);
+        return sha;
+    }
+
+    /** Returns the blob id of file F at PATH if the index vouches for it,
+     *  and otherwise null. */
+    String lookup(File f, String path) {
+        Entry e = _entries.get(path);
+        if (e == null) {
+            return null;
+        }
+        long[] stat = stat(f);
+        if (stat == null || stat[MTIME] >= _stamp - RACY_WINDOW
+                || stat[SIZE] != e._stat[SIZE]
+                || stat[MTIME] != e._stat[MTIME]
+                || stat[INODE] != e._stat[INODE]) {
+            return null;
+        }
+        return e._sha;
+    }
+
+    /** Records that file F at PATH currently holds blob SHA. */
+    void record(File f, String path, String sha) {
+        long[] stat = stat(f);
+        Entry old = _entries.get(path);
+        if (stat == null) {
+            remove(path);
+        } else if (old == null || !old._sha.equals(sha)
+                   || !Arrays.equals(old._stat, stat)) {
+            _entries.put(path, new Entry(stat, sha));
+            _dirty = true;
+        }
+    }
+
+    /** Forgets PATH. */
+    void remove(String path) {
+        if (_entries.remove(path) != null) {
+            _dirty = true;
+        }
+    }
+
+    /** Writes the index back if it has changed. */
+    void save() {
+        if (!_dirty) {
+            return;
+        }
+        File tmp;
+        try {
+            tmp = File.createTempFile(_file.getName(), ".tmp",
+                                      _file.getParentFile());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(
+                     tmp.toPath())))) {
+            _stamp = TimeUnit.MILLISECONDS.toNanos(
+                System.currentTimeMillis());
+            out.writeInt(MAGIC);
+            out.writeLong(_stamp);
+            out.writeInt(_entries.size());
+            for (String path : _entries.keySet()) {
+                Entry e = _entries.get(path);
+                out.writeUTF(path);
+                for (long v : e._stat) {
+                    out.writeLong(v);
+                }
+                out.write(Utils.hexToBytes(e._sha));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), _file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _dirty = false;
+    }
+
+    /** Returns the size, modification time in nanoseconds and inode number
+     *  (0 where unsupported) of F, or null if it is not a file. */
+    private static long[] stat(File f) {
+        Path p = f.toPath();
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(p, BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                return null;
+            }
+            long inode = 0;
+            try {
+                inode = ((Number) Files.getAttribute(p, "unix:ino"))
+                    .longValue();
+            } catch (UnsupportedOperationException
+                     | IllegalArgumentException excp) {
+                inode = 0;
+            }
+            return new long[] {attrs.size(),
+                attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS), inode};
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** The stat information and blob id of one file. */
+    private static class Entry {
+        /** An entry with stat information STAT and blob id SHA. */
+        Entry(long[] stat, String sha) {
+            _stat = stat;
+            _sha = sha;
+        }
+
+        /** Size, modification time and inode number. */
+        private final long[] _stat;
+
+        /** Blob id. */
+        private final String _sha;
+    }
+
+    /** Magic number at the start of an index file. */
+    private static final int MAGIC = 0x47494458;
+
+    /** Files modified less than this many nanoseconds before the index
+     *  was written are not trusted. */
+    private static final long RACY_WINDOW = TimeUnit.SECONDS.toNanos(1);
+
+    /** Bytes in a raw blob id. */
+    private static final int ID_BYTES = 20;
+
+    /** Index in stat arrays of the size. */
+    private static final int SIZE = 0;
+
+    /** Index in stat arrays of the modification time. */
+    private static final int MTIME = 1;
+
+    /** Index in stat arrays of the inode number. */
+    private static final int INODE = 2;
+
+    /** The index file. */
+    private File _file;
+
+    /** Time, in nanoseconds, at which the index was last written. */
+    private long _stamp;
+
+    /** Entries by path.  Lookups and updates may come from several
+     *  threads at once. */
+    private ConcurrentHashMap<String, Entry> _entries;
+
+    /** True iff the entries have changed since they were read. */
+    private volatile boolean _dirty;
+
+}
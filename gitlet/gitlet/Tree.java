@@ -0,0 +1,246 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/** A snapshot of one directory: a sorted table mapping each name in it to
+ *  the id of a blob (for files) or of another tree (for subdirectories).
+ *  Trees are content-addressed like blobs, so a directory that did not
+ *  change between two commits is the same object in both, and comparing
+ *  two snapshots can skip any subtree whose id is unchanged.  Paths use
+ *  "/" to separate directories.
+ *  @author Santosh Tatipamula
+ */
+class Tree {
+
+    /** An empty tree. */
+    Tree() {
+        _entries = new TreeMap<>();
+    }
+
+    /** Returns the id of the tree obtained from the tree ROOT (or an empty
+     *  tree if ROOT is null) by applying CHANGES, which maps each path to
+     *  the id of its new blob or to null if the path is removed.  Only the
+     *  trees on the paths to changed files are rebuilt and written to
+     *  OBJECTS; all other subtrees are shared with ROOT. */
+    static String update(ObjectStore objects, String root,
+                         Map<String, String> changes) {
+        Tree t = apply(objects, root, changes);
+        return objects.writetree(t == null ? new Tree() : t);
+    }
+
+    /** Returns the id of the tree holding the files in MAPPING, from
+     *  paths to blob ids, writing any new trees to OBJECTS. */
+    static String write(ObjectStore objects, Map<String, String> mapping) {
+        return update(objects, null, mapping);
+    }
+
+    /** Returns a map from the path of every file in the tree ROOT to its
+     *  blob id. */
+    static HashMap<String, String> flatten(ObjectStore objects,
+                                           String root) {
+        HashMap<String, String> result = new HashMap<>();
+        flatten(objects, root, "", result);
+        return result;
+    }
+
+    /** Returns the paths whose blob ids differ between the trees A and B
+     *  (either of which may be null for an empty tree), each mapped to its
+     *  old and new blob ids, with null for a missing file.  Subtrees with
+     *  the same id in A and B are not read. */
+    static TreeMap<String, String[]> diff(ObjectStore objects, String a,
+                                          String b) {
+        TreeMap<String, String[]> result = new TreeMap<>();
+        diff(objects, a, b, "", result);
+        return result;
+    }
+
+    /** Adds to TREES and BLOBS the ids of the tree ROOT and of the trees
+     *  and blobs beneath it for which KNOWN is false, skipping every
+     *  known tree along with its contents. */
+    static void reachable(ObjectStore objects, String root,
+                          Predicate<String> known, Collection<String> trees,
+                          Collection<String> blobs) {
+        if (known.test(root)) {
+            return;
+        }
+        trees.add(root);
+        for (Entry e : objects.readtree(root)._entries.values()) {
+            if (e._dir) {
+                reachable(objects, e._id, known, trees, blobs);
+            } else if (!known.test(e._id)) {
+                blobs.add(e._id);
+            }
+        }
+    }
+
+    /** Returns this tree in its stored form: a magic number and version,
+     *  then a varint count of entries and, for each entry in name order,
+     *  its kind, its name and the raw id it refers to.
+     *  @return bytes */
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(bytes))) {
+            out.writeShort(MAGIC);
+            out.writeByte(VERSION);
+            Codec.writevarint(out, _entries.size());
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                out.writeByte(e.getValue()._dir ? DIR : FILE);
+                Codec.writestring(out, e.getKey());
+                Codec.writeid(out, e.getValue()._id);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the tree encoded in DATA by encode. */
+    static Tree decode(byte[] data) {
+        Tree t = new Tree();
+        try (DataInputStream in = new DataInputStream(
+                 new ByteArrayInputStream(data))) {
+            if (in.readUnsignedShort() != MAGIC
+                    || in.readUnsignedByte() != VERSION) {
+                throw Utils.error("Unknown tree format.");
+            }
+            for (int n = Codec.readvarint(in); n > 0; n -= 1) {
+                boolean dir = in.readUnsignedByte() == DIR;
+                String name = Codec.readstring(in);
+                t._entries.put(name, new Entry(dir, Codec.readid(in)));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return t;
+    }
+
+    /** Returns the tree obtained by applying CHANGES to the tree ROOT,
+     *  writing rebuilt subtrees to OBJECTS, or null if the result is
+     *  empty.  A directory emptied by CHANGES is removed, but a file
+     *  that CHANGES put in its place is kept. */
+    private static Tree apply(ObjectStore objects, String root,
+                              Map<String, String> changes) {
+        Tree t = root == null ? new Tree() : objects.readtree(root);
+        TreeMap<String, HashMap<String, String>> below = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                below.computeIfAbsent(path.substring(0, slash),
+                                      k -> new HashMap<>())
+                    .put(path.substring(slash + 1), change.getValue());
+            } else if (change.getValue() == null) {
+                t._entries.remove(path);
+            } else {
+                t._entries.put(path, new Entry(false, change.getValue()));
+            }
+        }
+        for (String dir : below.keySet()) {
+            Entry old = t._entries.get(dir);
+            String child = old != null && old._dir ? old._id : null;
+            Tree sub = apply(objects, child, below.get(dir));
+            if (sub != null) {
+                t._entries.put(dir, new Entry(true, objects.writetree(sub)));
+            } else if (child != null) {
+                t._entries.remove(dir);
+            }
+        }
+        return t._entries.isEmpty() ? null : t;
+    }
+
+    /** Adds the files in the tree ROOT to RESULT, with PREFIX prepended to
+     *  their paths. */
+    private static void flatten(ObjectStore objects, String root,
+                                String prefix, Map<String, String> result) {
+        if (root == null) {
+            return;
+        }
+        for (Map.Entry<String, Entry> e
+                 : objects.readtree(root)._entries.entrySet()) {
+            Entry entry = e.getValue();
+            if (entry._dir) {
+                flatten(objects, entry._id, prefix + e.getKey() + "/",
+                        result);
+            } else {
+                result.put(prefix + e.getKey(), entry._id);
+            }
+        }
+    }
+
+    /** Adds the differences between trees A and B to RESULT, with PREFIX
+     *  prepended to their paths. */
+    private static void diff(ObjectStore objects, String a, String b,
+                             String prefix, Map<String, String[]> result) {
+        if (a != null && a.equals(b)) {
+            return;
+        }
+        TreeMap<String, Entry> left =
+            a == null ? new TreeMap<>() : objects.readtree(a)._entries;
+        TreeMap<String, Entry> right =
+            b == null ? new TreeMap<>() : objects.readtree(b)._entries;
+        TreeSet<String> names = new TreeSet<>(left.keySet());
+        names.addAll(right.keySet());
+        for (String name : names) {
+            Entry l = left.get(name);
+            Entry r = right.get(name);
+            if (l != null && r != null && l._dir == r._dir
+                    && l._id.equals(r._id)) {
+                continue;
+            }
+            String path = prefix + name;
+            String ltree = l != null && l._dir ? l._id : null;
+            String rtree = r != null && r._dir ? r._id : null;
+            if (ltree != null || rtree != null) {
+                diff(objects, ltree, rtree, path + "/", result);
+            }
+            String lfile = l != null && !l._dir ? l._id : null;
+            String rfile = r != null && !r._dir ? r._id : null;
+            if (lfile != null || rfile != null) {
+                result.put(path, new String[] {lfile, rfile});
+            }
+        }
+    }
+
+    /** One name in a tree. */
+    private static class Entry {
+        /** An entry for a subtree (if DIR) or blob with id ID. */
+        Entry(boolean dir, String id) {
+            _dir = dir;
+            _id = id;
+        }
+
+        /** True iff this entry is a subdirectory. */
+        private final boolean _dir;
+
+        /** The id of the tree or blob. */
+        private final String _id;
+    }
+
+    /** First two bytes of an encoded tree. */
+    private static final int MAGIC = 0x4754;
+
+    /** Version of the encoding written by encode. */
+    private static final int VERSION = 1;
+
+    /** Kind byte of a file entry. */
+    private static final int FILE = 0;
+
+    /** Kind byte of a subdirectory entry. */
+    private static final int DIR = 1;
+
+    /** The entries, by name. */
+    private TreeMap<String, Entry> _entries;
+
+}
@@ -3,7 +3,26 @@ package gitlet;
 
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
 
 public class UnitTests {
 
@@ -106,4 +125,565 @@ public class UnitTests {
         testGit.checkout("master");
     }
 
+    @Test
+    public void deltaRoundTrip() {
+        Random r = new Random(61);
+        byte[] base = new byte[100000];
+        r.nextBytes(base);
+        byte[] target = new byte[base.length + 50];
+        System.arraycopy(base, 0, target, 0, 40000);
+        System.arraycopy(base, 40000, target, 40050, 60000);
+        byte[] delta = Delta.create(base, target);
+        assertTrue(delta.length < 1000);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        assertArrayEquals(base, Delta.apply(target,
+                Delta.create(target, base)));
+        assertArrayEquals(new byte[0], Delta.apply(base,
+                Delta.create(base, new byte[0])));
+    }
+
+    @Test
+    public void packDuplicates() throws IOException {
+        File dir = Files.createTempDirectory("pack").toFile();
+        PackFile pack = new PackFile(dir);
+        String id = Utils.sha1("wug");
+        byte[] body = "wug".getBytes(StandardCharsets.UTF_8);
+        pack.append(List.of(id, id), List.of(PackFile.BLOB, PackFile.BLOB),
+                List.of(body, body));
+        pack.append(List.of(id), List.of(PackFile.BLOB), List.of(body));
+        assertEquals(List.of(id), pack.ids(PackFile.BLOB));
+        assertArrayEquals(body, pack.read(id));
+        assertEquals(body.length, new File(dir, "objects.pack").length());
+    }
+
+    @Test
+    public void commitGraphAncestry() throws IOException {
+        File dir = Files.createTempDirectory("graph").toFile();
+        CommitGraph g = new CommitGraph(dir);
+        int root = g.add(Utils.sha1("root"), CommitGraph.NONE,
+                CommitGraph.NONE, 0, "date", "root");
+        int left = g.add(Utils.sha1("left"), root, CommitGraph.NONE,
+                1, "date", "left");
+        int right = g.add(Utils.sha1("right"), root, CommitGraph.NONE,
+                2, "date", "right");
+        int merge = g.add(Utils.sha1("merge"), left, right, 3, "date",
+                "merged");
+        assertEquals(3, g.generation(merge));
+        assertTrue(g.isancestor(right, merge));
+        assertTrue(g.isancestor(root, merge));
+        assertFalse(g.isancestor(left, right));
+        CommitGraph reopened = new CommitGraph(dir);
+        assertEquals(4, reopened.size());
+        assertEquals(left, reopened.position(Utils.sha1("left")));
+        assertEquals("merged", reopened.message(merge));
+        assertEquals(right, reopened.secondparent(merge));
+        assertEquals(root, g.mergebase(left, right));
+        assertEquals(right, g.mergebase(merge, right));
+        int later = g.add(Utils.sha1("later"), right, CommitGraph.NONE,
+                4, "date", "later");
+        assertEquals(right, g.mergebase(merge, later));
+    }
+
+    @Test
+    public void commitEncoding() {
+        String tree = Utils.sha1("tree");
+        Commit c = new Commit("a message", tree, false,
+                new String[] {Utils.sha1("p1"), Utils.sha1("p2")});
+        Commit d = Commit.decode(c.encode());
+        assertEquals(c.hash(), d.hash());
+        assertEquals(tree, d.gettree());
+        assertEquals(2, d.getparents().length);
+        Commit first = new Commit("initial commit", tree, true, null);
+        assertEquals(first.hash(), Commit.decode(first.encode()).hash());
+        assertNull(Commit.decode(first.encode()).getparents());
+    }
+
+    @Test
+    public void commitTime() {
+        TimeZone zone = TimeZone.getDefault();
+        try {
+            for (String id : new String[] {"UTC", "Asia/Kolkata",
+                                           "Pacific/Honolulu"}) {
+                TimeZone.setDefault(TimeZone.getTimeZone(id));
+                long before = System.currentTimeMillis();
+                Commit c = new Commit("now", Utils.sha1("tree"), false,
+                        new String[] {Utils.sha1("p")});
+                long after = System.currentTimeMillis();
+                assertTrue(before <= c.gettime() && c.gettime() <= after);
+                Commit d = Commit.decode(c.encode());
+                assertEquals(c.gettime() / 1000 * 1000, d.gettime());
+            }
+        } finally {
+            TimeZone.setDefault(zone);
+        }
+        assertEquals(0, new Commit("initial commit", Utils.sha1("tree"),
+                true, null).gettime());
+    }
+
+    @Test
+    public void commitGraphTornRecord() throws IOException {
+        File dir = Files.createTempDirectory("graph").toFile();
+        CommitGraph g = new CommitGraph(dir);
+        int root = g.add(Utils.sha1("root"), CommitGraph.NONE,
+                CommitGraph.NONE, 1, "date", "root");
+        g.add(Utils.sha1("next"), root, CommitGraph.NONE, 2, "date",
+                "next");
+        File nodes = new File(dir, "nodes");
+        long whole = nodes.length();
+        byte[] record = Arrays.copyOfRange(Utils.readContents(nodes),
+                (int) whole / 2, (int) whole);
+        ByteBuffer.wrap(record).putLong(record.length - Long.BYTES,
+                new File(dir, "text").length());
+        try (FileOutputStream out = new FileOutputStream(nodes, true)) {
+            out.write(record);
+            out.write(record, 0, record.length / 2);
+        }
+        g = new CommitGraph(dir);
+        assertEquals(2, g.size());
+        int last = g.add(Utils.sha1("last"), root, CommitGraph.NONE, 3,
+                "date", "last");
+        assertEquals(2, last);
+        assertEquals(whole / 2 * 3, nodes.length());
+        g = new CommitGraph(dir);
+        assertEquals(3, g.size());
+        assertEquals("last", g.message(last));
+        assertEquals(Utils.sha1("next"), g.id(1));
+    }
+
+    @Test
+    public void commitGraphTimeOrder() throws IOException {
+        File dir = Files.createTempDirectory("graph").toFile();
+        CommitGraph g = new CommitGraph(dir);
+        int old = g.add(Utils.sha1("old"), CommitGraph.NONE,
+                CommitGraph.NONE, 1, "date", "old");
+        int fetched = g.add(Utils.sha1("fetched"), old, CommitGraph.NONE,
+                3, "date", "fetched");
+        int local = g.add(Utils.sha1("local"), old, CommitGraph.NONE,
+                5, "date", "local");
+        int tie = g.add(Utils.sha1("tie"), old, CommitGraph.NONE,
+                3, "date", "tie");
+        assertArrayEquals(new Integer[] {local, tie, fetched, old},
+                g.newestfirst());
+    }
+
+    @Test
+    public void treeFileReplacesDirectory() throws IOException {
+        ObjectStore objects = new ObjectStore(
+                Files.createTempDirectory("tree").toFile());
+        String x = Utils.sha1("x");
+        String d = Utils.sha1("d");
+        String dirs = Tree.write(objects, Map.of("d/x", x, "e", x));
+        HashMap<String, String> changes = new HashMap<>();
+        changes.put("d", d);
+        changes.put("d/x", null);
+        String files = Tree.update(objects, dirs, changes);
+        assertEquals(Map.of("d", d, "e", x), Tree.flatten(objects, files));
+        changes.clear();
+        changes.put("d", null);
+        changes.put("d/x", x);
+        assertEquals(Map.of("d/x", x, "e", x),
+                Tree.flatten(objects, Tree.update(objects, files, changes)));
+    }
+
+    @Test
+    public void treeSharing() throws IOException {
+        ObjectStore objects = new ObjectStore(
+                Files.createTempDirectory("trees").toFile());
+        HashMap<String, String> mapping = new HashMap<>();
+        mapping.put("wug.txt", Utils.sha1("wug"));
+        mapping.put("a/b/notwug.txt", Utils.sha1("notwug"));
+        mapping.put("a/wug2.txt", Utils.sha1("wug2"));
+        mapping.put("c/wug3.txt", Utils.sha1("wug3"));
+        String root = Tree.write(objects, mapping);
+        assertEquals(mapping, Tree.flatten(objects, root));
+        assertEquals(root, Tree.write(objects, new HashMap<>(mapping)));
+        HashMap<String, String> changes = new HashMap<>();
+        changes.put("a/b/notwug.txt", Utils.sha1("changed"));
+        changes.put("c/wug3.txt", null);
+        String updated = Tree.update(objects, root, changes);
+        mapping.put("a/b/notwug.txt", Utils.sha1("changed"));
+        mapping.remove("c/wug3.txt");
+        assertEquals(mapping, Tree.flatten(objects, updated));
+        assertEquals(updated, Tree.write(objects, mapping));
+        HashMap<String, String[]> diff =
+                new HashMap<>(Tree.diff(objects, root, updated));
+        assertEquals(2, diff.size());
+        assertEquals(Utils.sha1("notwug"), diff.get("a/b/notwug.txt")[0]);
+        assertEquals(Utils.sha1("changed"), diff.get("a/b/notwug.txt")[1]);
+        assertNull(diff.get("c/wug3.txt")[1]);
+        assertTrue(Tree.diff(objects, updated, updated).isEmpty());
+    }
+
+    @Test
+    public void commitPrefixLookup() throws IOException {
+        File dir = Files.createTempDirectory("prefix").toFile();
+        new File(dir, "commits").mkdir();
+        ObjectStore objects = new ObjectStore(dir);
+        String tree = Tree.write(objects, new HashMap<>());
+        String[] ids = new String[40];
+        for (int i = 0; i < ids.length; i += 1) {
+            Commit c = new Commit("commit " + i, tree, i == 0, null);
+            objects.writecommit(c);
+            ids[i] = c.hash();
+            if (i == ids.length / 2) {
+                objects.repack();
+            }
+        }
+        for (String id : ids) {
+            assertEquals(List.of(id), objects.commitswithprefix(id, 2));
+            assertEquals(id, objects.commitswithprefix(
+                    id.substring(0, 12), 2).get(0));
+        }
+        assertEquals(2, objects.commitswithprefix("", 2).size());
+        assertTrue(objects.commitswithprefix("xyz", 2).isEmpty());
+        assertTrue(objects.commitswithprefix(tree, 2).isEmpty());
+    }
+
+    @Test
+    public void parallelMaterialize() throws IOException {
+        File dir = Files.createTempDirectory("work").toFile();
+        File meta = new File(dir, ".gitlet");
+        new File(meta, "staging").mkdirs();
+        ObjectStore objects = new ObjectStore(meta);
+        StatCache stats = new StatCache(new File(meta, "index"));
+        Materializer work = new Materializer(objects, stats);
+        for (int i = 0; i < 300; i += 1) {
+            byte[] contents = ("file " + i + "\n").getBytes();
+            String sha = Utils.sha1(contents);
+            objects.writeblob(sha, contents, null);
+            work.write(new File(dir, "f" + i).getPath(), sha);
+        }
+        work.run();
+        assertEquals(0, work.size());
+        for (int i = 0; i < 300; i += 1) {
+            File f = new File(dir, "f" + i);
+            assertEquals("file " + i + "\n", Utils.readContentsAsString(f));
+            work.delete(f.getPath());
+        }
+        String missing = Utils.sha1("missing");
+        work.write(new File(dir, "g").getPath(), missing);
+        work.write(new File(dir, "h").getPath(), Utils.sha1("other"));
+        try {
+            work.run();
+            fail("expected missing blob");
+        } catch (GitletException excp) {
+            assertTrue(excp.getMessage().contains(missing));
+        }
+        for (int i = 0; i < 300; i += 1) {
+            assertFalse(new File(dir, "f" + i).exists());
+        }
+    }
+
+    @Test
+    public void messageIndex() throws IOException {
+        File dir = Files.createTempDirectory("messages").toFile();
+        CommitGraph g = new CommitGraph(new File(dir, "graph"));
+        String[] messages = {"initial commit", "add wug", "fix wug bug",
+            "add wug", "merge", "ok"};
+        int prev = CommitGraph.NONE;
+        for (int i = 0; i < 3; i += 1) {
+            prev = g.add(Utils.sha1("c" + i), prev, CommitGraph.NONE,
+                    i, "date", messages[i]);
+        }
+        MessageIndex index = new MessageIndex(new File(dir, "messages"));
+        index.update(g);
+        assertEquals(List.of(1), index.exact(g, "add wug"));
+        for (int i = 3; i < messages.length; i += 1) {
+            prev = g.add(Utils.sha1("c" + i), prev, CommitGraph.NONE,
+                    i, "date", messages[i]);
+        }
+        index = new MessageIndex(new File(dir, "messages"));
+        index.update(g);
+        assertEquals(List.of(1, 3), index.exact(g, "add wug"));
+        assertEquals(List.of(), index.exact(g, "add"));
+        assertEquals(List.of(1, 2, 3), index.containing(g, "wug"));
+        assertEquals(List.of(2), index.containing(g, "wug bug"));
+        assertEquals(List.of(5), index.containing(g, "ok"));
+        assertEquals(List.of(), index.containing(g, "wugs"));
+    }
+
+    @Test
+    public void daemonRoundTrip() throws Exception {
+        File dir = Files.createTempDirectory("daemon").toFile();
+        gitlet(dir, "init");
+        Process server = new ProcessBuilder(java(), "-cp",
+                System.getProperty("java.class.path"), "gitlet.Main",
+                "daemon").directory(dir).start();
+        try {
+            File sock = new File(dir, Daemon.SOCKET);
+            for (int i = 0; i < 250 && !sock.exists(); i += 1) {
+                Thread.sleep(20);
+            }
+            assertTrue(sock.exists());
+            gitlet(dir, "branch", "cool-beans");
+            assertTrue(gitlet(dir, "status").contains("cool-beans"));
+            assertTrue(server.isAlive());
+            gitlet(dir, "daemon", "stop");
+            assertEquals(0, server.waitFor());
+            assertFalse(sock.exists());
+            assertTrue(gitlet(dir, "branch", "cool-beans")
+                    .contains("already exists"));
+        } finally {
+            server.destroy();
+            try (Stream<Path> paths = Files.walk(dir.toPath())) {
+                paths.sorted(Comparator.reverseOrder())
+                    .forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    /** Runs Gitlet with arguments ARGS in directory DIR, returning its
+     *  standard output. */
+    private static String gitlet(File dir, String... args)
+        throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(List.of(java(), "-cp",
+                System.getProperty("java.class.path"), "gitlet.Main"));
+        command.addAll(Arrays.asList(args));
+        Process p = new ProcessBuilder(command).directory(dir)
+                .redirectErrorStream(true).start();
+        String out = new String(p.getInputStream().readAllBytes(),
+                StandardCharsets.UTF_8);
+        p.waitFor();
+        return out;
+    }
+
+    /** Returns the path of the java launcher running these tests. */
+    private static String java() {
+        return new File(new File(System.getProperty("java.home"), "bin"),
+                "java").getPath();
+    }
+
+    @Test
+    public void commitCacheEviction() {
+        CommitCache cache = new CommitCache(1000);
+        Commit c = new Commit("m", Utils.sha1("tree"), true, null);
+        cache.put("a", c, 100);
+        cache.put("b", c, 100);
+        assertEquals(c, cache.get("a"));
+        cache.put("c", c, 100);
+        assertNull(cache.get("b"));
+        assertEquals(c, cache.get("a"));
+        assertEquals(c, cache.get("c"));
+        assertTrue(cache.stats().startsWith(
+                "Commit cache: 3 hits, 1 misses"));
+        cache.put("big", c, 500);
+        assertNull(cache.get("a"));
+        assertNull(cache.get("c"));
+        assertEquals(c, cache.get("big"));
+    }
+
+    @Test
+    public void lineMerge() {
+        byte[] base = "a\nb\nc\nd\ne\n".getBytes();
+        LineMerge clean = new LineMerge(base,
+                "A\nb\nc\nd\ne\n".getBytes(), "a\nb\nc\nd\nE\nf\n".getBytes());
+        assertEquals(0, clean.conflicts());
+        assertEquals("A\nb\nc\nd\nE\nf\n", new String(clean.result()));
+        LineMerge conflict = new LineMerge(base,
+                "a\nB\nc\nd\ne\n".getBytes(), "a\nX\nc\nd\nE\n".getBytes());
+        assertEquals(1, conflict.conflicts());
+        assertEquals("a\n<<<<<<< HEAD\nB\n=======\nX\n>>>>>>>\nc\nd\nE\n",
+                new String(conflict.result()));
+        int[] a = {1, 2, 3, 4, 5, 6};
+        int[] b = {2, 9, 3, 5, 6, 7};
+        assertArrayEquals(new int[] {-1, 0, 2, -1, 3, 4}, Diff.match(a, b));
+    }
+
+    @Test
+    public void mergePlan() throws IOException {
+        ObjectStore objects = new ObjectStore(
+                Files.createTempDirectory("merge").toFile());
+        HashMap<String, String> split = new HashMap<>();
+        split.put("same.txt", Utils.sha1("same"));
+        split.put("theirs.txt", Utils.sha1("old"));
+        split.put("gone.txt", Utils.sha1("gone"));
+        split.put("d/kept.txt", Utils.sha1("kept"));
+        HashMap<String, String> ours = new HashMap<>(split);
+        ours.put("d/kept.txt", Utils.sha1("ours"));
+        ours.put("mine.txt", Utils.sha1("mine"));
+        HashMap<String, String> theirs = new HashMap<>(split);
+        theirs.put("theirs.txt", Utils.sha1("new"));
+        theirs.remove("gone.txt");
+        theirs.remove("d/kept.txt");
+        theirs.put("added.txt", Utils.sha1("added"));
+        MergePlan plan = new MergePlan(objects, Tree.write(objects, split),
+                Tree.write(objects, ours), Tree.write(objects, theirs));
+        assertEquals(4, plan.size());
+        assertEquals("added.txt", plan.path(0));
+        assertEquals(MergePlan.TAKE, plan.action(0));
+        assertEquals("d/kept.txt", plan.path(1));
+        assertEquals(MergePlan.DELETED, plan.action(1));
+        assertEquals("gone.txt", plan.path(2));
+        assertEquals(MergePlan.REMOVE, plan.action(2));
+        assertEquals("theirs.txt", plan.path(3));
+        assertEquals(MergePlan.TAKE, plan.action(3));
+        assertEquals(Utils.sha1("new"), plan.theirs(3));
+    }
+
+    @Test
+    public void remoteTransfer() throws IOException {
+        File src = Files.createTempDirectory("src").toFile();
+        File dst = Files.createTempDirectory("dst").toFile();
+        ObjectStore from = new ObjectStore(src);
+        ObjectStore to = new ObjectStore(dst);
+        new File(src, "staging").mkdirs();
+        new File(src, "commits").mkdirs();
+        String parent = null;
+        for (int i = 0; i < 3; i += 1) {
+            byte[] contents = ("version " + i).getBytes();
+            String blob = Utils.sha1(contents);
+            from.writeblob(blob, contents, null);
+            HashMap<String, String> files = new HashMap<>();
+            files.put("d/wug.txt", blob);
+            files.put("same.txt", Utils.sha1("same"));
+            if (i == 0) {
+                from.writeblob(Utils.sha1("same"), "same".getBytes(), null);
+            }
+            Commit c = new Commit("v" + i, Tree.write(from, files), i == 0,
+                    parent == null ? null : new String[] {parent});
+            from.writecommit(c);
+            parent = c.hash();
+        }
+        CommitGraph graph = CommitGraph.open(new File(src, "graph"), from);
+        List<String> sent = Remote.transfer(from, graph, to, parent);
+        assertEquals(3, sent.size());
+        assertEquals(parent, sent.get(2));
+        Commit head = to.readcommit(parent);
+        assertEquals("v2", head.getmessage());
+        assertEquals("version 2",
+                new String(to.readblob(Tree.flatten(to, head.gettree())
+                        .get("d/wug.txt"))));
+        assertTrue(Remote.transfer(from, graph, to, parent).isEmpty());
+    }
+
+    @Test
+    public void fanoutMigration() throws IOException {
+        File dir = Files.createTempDirectory("fanout").toFile();
+        File commits = new File(dir, "commits");
+        File blobs = new File(dir, "staging");
+        commits.mkdirs();
+        blobs.mkdirs();
+        byte[] contents = "wug".getBytes();
+        String blob = Utils.sha1(contents);
+        Utils.writeContents(new File(blobs, blob), contents);
+        Commit c = new Commit("old", Tree.write(new ObjectStore(dir),
+                new HashMap<>()), true, null);
+        Utils.writeContents(new File(commits, c.hash()),
+                ObjectStore.deflate(c.encode()));
+        ObjectStore objects = ObjectStore.open(dir);
+        assertFalse(new File(commits, c.hash()).exists());
+        assertTrue(new File(new File(commits, c.hash().substring(0, 2)),
+                c.hash().substring(2)).isFile());
+        assertTrue(objects.hascommit(c.hash()));
+        assertEquals("old", objects.readcommit(c.hash()).getmessage());
+        assertEquals(List.of(c.hash()), objects.commitids());
+        assertEquals(List.of(c.hash()),
+                objects.commitswithprefix(c.hash().substring(0, 1), 2));
+        assertArrayEquals(contents, objects.readblob(blob));
+        assertEquals(0, objects.migrate());
+        assertFalse(objects.hascommit(blob));
+        assertFalse(objects.hascommit("../" + c.hash().substring(3)));
+    }
+
+    @Test
+    public void legacyCommit() throws IOException {
+        File dir = Files.createTempDirectory("legacy").toFile();
+        String parent = Utils.sha1("parent");
+        String blob = Utils.sha1("wug");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeShort(0x4743);
+            out.writeByte(1);
+            out.writeByte(0);
+            Codec.writestring(out, "old");
+            Codec.writestring(out, "Wed Dec 31 16:00:00 1969 -0800");
+            Codec.writevarint(out, 1);
+            Codec.writeid(out, parent);
+            Codec.writevarint(out, 1);
+            Codec.writevarint(out, 0);
+            Codec.writevarint(out, "wug.txt".length());
+            out.writeBytes("wug.txt");
+            Codec.writeid(out, blob);
+        }
+        String id = Utils.sha1("old commit");
+        File f = new File(new File(dir, "commits/" + id.substring(0, 2)),
+                id.substring(2));
+        f.getParentFile().mkdirs();
+        Utils.writeContents(f, ObjectStore.deflate(bytes.toByteArray()));
+        ObjectStore objects = ObjectStore.open(dir);
+        Commit c = objects.readcommit(id);
+        assertEquals(id, c.hash());
+        assertEquals("old", c.getmessage());
+        assertArrayEquals(new String[] {parent}, c.getparents());
+        assertEquals(blob, Tree.flatten(objects, c.gettree())
+                .get("wug.txt"));
+    }
+
+    @Test
+    public void journalRecovery() throws IOException {
+        File dir = Files.createTempDirectory("journal").toFile();
+        File f = new File(dir, Journal.JOURNAL_FILE);
+        Refs refs = new Refs(dir);
+        Journal journal = new Journal(dir);
+        refs.sethead(journal, null, "master");
+        refs.set(journal, "master", null, Utils.sha1("one"));
+        refs.set(journal, "other", null, Utils.sha1("two"));
+        journal.commit();
+        assertEquals("master", refs.head());
+        assertEquals(2, refs.branches().size());
+        assertFalse(f.exists());
+
+        journal = new Journal(dir);
+        refs.set(journal, "master", Utils.sha1("one"), Utils.sha1("three"));
+        refs.delete(journal, "other", Utils.sha1("two"));
+        journal.put("stage", new byte[] {1, 2, 3});
+        byte[] record = journal.record();
+        Utils.writeContents(f, Arrays.copyOf(record, record.length - 1));
+        Journal.recover(dir);
+        assertFalse(f.exists());
+        assertEquals(Utils.sha1("one"), refs.get("master"));
+        assertEquals(Utils.sha1("two"), refs.get("other"));
+
+        Utils.writeContents(f, record);
+        Journal.recover(dir);
+        assertFalse(f.exists());
+        assertEquals(Utils.sha1("three"), refs.get("master"));
+        assertNull(refs.get("other"));
+        assertArrayEquals(new byte[] {1, 2, 3},
+                Utils.readContents(new File(dir, "stage")));
+    }
+
+    @Test
+    public void optimisticRefUpdate() throws IOException {
+        File dir = Files.createTempDirectory("cas").toFile();
+        Refs refs = new Refs(dir);
+        Journal journal = new Journal(dir);
+        refs.set(journal, "master", null, Utils.sha1("one"));
+        journal.commit();
+        Journal mine = new Journal(dir);
+        refs.set(mine, "master", Utils.sha1("one"), Utils.sha1("mine"));
+        refs.set(mine, "topic", null, Utils.sha1("mine"));
+        Journal theirs = new Journal(dir);
+        refs.set(theirs, "master", Utils.sha1("one"), Utils.sha1("theirs"));
+        theirs.commit();
+        try {
+            mine.commit();
+            fail("stale update was written");
+        } catch (GitletException excp) {
+            assertEquals(Utils.sha1("theirs"), refs.get("master"));
+            assertNull(refs.get("topic"));
+        }
+        try (RepoLock lock = RepoLock.acquire(dir, true)) {
+            assertTrue(lock.shared());
+        }
+        try (RepoLock lock = RepoLock.acquire(dir, false)) {
+            assertFalse(lock.shared());
+            RepoLock.acquire(dir, 100).close();
+            fail("took a lock that was held");
+        } catch (GitletException excp) {
+            assertTrue(excp.getMessage().contains("in use"));
+        }
+        RepoLock.acquire(dir, 100).close();
+    }
+
 }
@@ -0,0 +1,179 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.TreeSet;
+
+/** The files of a working directory, found by one walk of the whole
+ *  tree.  Paths are relative to the working directory and use "/" to
+ *  separate directories.  The .gitlet directory is never entered, and
+ *  neither is any file or directory matched by a pattern in the file
+ *  .gitletignore at the top of the working directory: one glob per line,
+ *  ignoring blank lines and lines starting with "#".  A pattern without
+ *  a "/" is matched against names, and one with a "/" against whole
+ *  paths; a pattern ending in "/" matches only directories.  An ignored
+ *  directory is pruned from the walk without being read.
+ *  @author Santosh Tatipamula
+ */
+class WorkTree {
+
+    /** The working directory ROOT. */
+    WorkTree(Path root) {
+        _root = root;
+    }
+
+    /** Returns the paths of all files in the working directory that are
+     *  not ignored, in order.  The directory is walked on the first call
+     *  only.
+     *  @return paths */
+    TreeSet<String> files() {
+        if (_files == null) {
+            _files = new TreeSet<>();
+            readignore();
+            try {
+                Files.walkFileTree(_root, new Walker());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return _files;
+    }
+
+    /** Deletes every directory holding one of the working files NAMES
+     *  that is now empty, and every directory left empty by that. */
+    static void prune(Collection<String> names) {
+        TreeSet<File> parents = new TreeSet<>(
+            Comparator.comparing(File::getPath).reversed());
+        for (String name : names) {
+            for (File p = new File(name).getParentFile(); p != null;
+                 p = p.getParentFile()) {
+                parents.add(p);
+            }
+        }
+        for (File p : parents) {
+            String[] left = p.list();
+            if (left != null && left.length == 0) {
+                p.delete();
+            }
+        }
+    }
+
+    /** Reads the ignore patterns. */
+    private void readignore() {
+        File f = _root.resolve(IGNORE_FILE).toFile();
+        if (!f.isFile()) {
+            return;
+        }
+        for (String line : Utils.readContentsAsString(f).split("\n")) {
+            String pattern = line.trim();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+            boolean dironly = pattern.endsWith("/");
+            if (dironly) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            boolean whole = pattern.contains("/");
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            _ignores.add(new Ignore(
+                FileSystems.getDefault().getPathMatcher("glob:" + pattern),
+                whole, dironly));
+        }
+    }
+
+    /** Returns true iff the file or (if DIR) directory at path REL,
+     *  relative to the working directory, is ignored. */
+    private boolean ignored(Path rel, boolean dir) {
+        for (Ignore ignore : _ignores) {
+            if (ignore.matches(rel, dir)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Collects the files of the working directory into _files. */
+    private class Walker extends SimpleFileVisitor<Path> {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir,
+                                                 BasicFileAttributes attrs) {
+            if (dir.equals(_root)) {
+                return FileVisitResult.CONTINUE;
+            }
+            Path rel = _root.relativize(dir);
+            if (rel.toString().equals(".gitlet") || ignored(rel, true)) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file,
+                                         BasicFileAttributes attrs) {
+            Path rel = _root.relativize(file);
+            if (attrs.isRegularFile() && !ignored(rel, false)) {
+                _files.add(rel.toString().replace(File.separatorChar, '/'));
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException excp) {
+            return FileVisitResult.CONTINUE;
+        }
+    }
+
+    /** One pattern of the ignore file. */
+    private static class Ignore {
+        /** A pattern matched by MATCHER against whole paths if WHOLE and
+         *  otherwise names, and only against directories if DIRONLY. */
+        Ignore(PathMatcher matcher, boolean whole, boolean dironly) {
+            _matcher = matcher;
+            _whole = whole;
+            _dironly = dironly;
+        }
+
+        /** Returns true iff this pattern matches the file or (if DIR)
+         *  directory at path REL. */
+        boolean matches(Path rel, boolean dir) {
+            if (_dironly && !dir) {
+                return false;
+            }
+            return _matcher.matches(_whole ? rel : rel.getFileName());
+        }
+
+        /** The glob. */
+        private final PathMatcher _matcher;
+
+        /** Whether the glob applies to whole paths rather than names. */
+        private final boolean _whole;
+
+        /** Whether the glob applies only to directories. */
+        private final boolean _dironly;
+    }
+
+    /** Name of the file of ignore patterns. */
+    static final String IGNORE_FILE = ".gitletignore";
+
+    /** The working directory. */
+    private final Path _root;
+
+    /** The ignore patterns. */
+    private final ArrayList<Ignore> _ignores = new ArrayList<>();
+
+    /** The files found, or null before the walk. */
+    private TreeSet<String> _files;
+
+}